@@ -31,10 +31,12 @@
  */
  package com.imagero.uio;
 
+import com.imagero.uio.bio.BufferedRandomAccessIO;
 import com.imagero.uio.io.UnexpectedEOFException;
 
 import java.io.IOException;
 import java.io.DataInput;
+import java.nio.ByteBuffer;
 
 /**
  * Methods to fill data in primitive arrays
@@ -44,6 +46,17 @@ import java.io.DataInput;
  * @author Andrey Kuznetsov
  */
 public class ReadUtil {
+
+    /**
+     * size of scratch buffer used for streams which don't expose their buffers
+     */
+    static final int SCRATCH_SIZE = 32 * 1024;
+
+    private static final ThreadLocal<byte[]> scratch = new ThreadLocal<byte[]>() {
+        protected byte[] initialValue() {
+            return new byte[SCRATCH_SIZE];
+        }
+    };
     public static int read(RandomAccessInput in, short[] dest) throws IOException {
         return read(in, dest, 0, dest.length, in.getByteOrder());
     }
@@ -267,88 +280,111 @@ public class ReadUtil {
     }
 
     public static int read(RandomAccessInput in, short[] dest, int destOffset, int len, int byteOrder) throws IOException {
-        byte[] b = new byte[len * 2];
-        int cnt = in.read(b);
-
-        if ((cnt & 1) != 0) {
-            in.seek(in.getFilePointer() - 1);
+        ByteBuffer bb = readBytes(in, len, 2, byteOrder);
+        if (bb == null) {
+            return -1;
         }
-        final int count = cnt >> 1;
-        Transformer.byteToShort(b, 0, count, dest, destOffset, byteOrder == Endian.BIG_ENDIAN);
+        final int count = bb.remaining() >> 1;
+        bb.asShortBuffer().get(dest, destOffset, count);
         return count;
     }
 
     public static int read(RandomAccessInput in, char[] dest, int destOffset, int len, int byteOrder) throws IOException {
-        byte[] b = new byte[len * 2];
-
-        int cnt = in.read(b);
-
-        if ((cnt & 1) != 0) {
-            in.seek(in.getFilePointer() - 1);
+        ByteBuffer bb = readBytes(in, len, 2, byteOrder);
+        if (bb == null) {
+            return -1;
         }
-
-        final int count = cnt >> 1;
-        Transformer.byteToChar(b, 0, count, dest, destOffset, byteOrder == Endian.BIG_ENDIAN);
+        final int count = bb.remaining() >> 1;
+        bb.asCharBuffer().get(dest, destOffset, count);
         return count;
     }
 
     public static int read(RandomAccessInput in, int[] dest, int destOffset, int len, int byteOrder) throws IOException {
-        byte[] b = new byte[len * 4];
-
-        int cnt = in.read(b);
-
-        int r3 = cnt & 3;
-        if (r3 != 0) {
-            in.seek(in.getFilePointer() - r3);
+        ByteBuffer bb = readBytes(in, len, 4, byteOrder);
+        if (bb == null) {
+            return -1;
         }
-
-        final int count = cnt >> 2;
-        Transformer.byteToInt(b, 0, count, dest, destOffset, byteOrder == Endian.BIG_ENDIAN);
+        final int count = bb.remaining() >> 2;
+        bb.asIntBuffer().get(dest, destOffset, count);
         return count;
     }
 
     public static int read(RandomAccessInput in, float[] dest, int destOffset, int len, int byteOrder) throws IOException {
-        byte[] b = new byte[len * 4];
-        int cnt = in.read(b);
-
-        int r3 = cnt & 3;
-        if (r3 != 0) {
-            in.seek(in.getFilePointer() - r3);
+        ByteBuffer bb = readBytes(in, len, 4, byteOrder);
+        if (bb == null) {
+            return -1;
         }
-
-        final int count = cnt >> 2;
-        Transformer.byteToFloat(b, 0, count, dest, destOffset, byteOrder == Endian.BIG_ENDIAN);
+        final int count = bb.remaining() >> 2;
+        bb.asFloatBuffer().get(dest, destOffset, count);
         return count;
     }
 
     public static int read(RandomAccessInput in, long[] dest, int destOffset, int len, int byteOrder) throws IOException {
-        byte[] b = new byte[len * 8];
-        int cnt = in.read(b);
-
-        int r7 = cnt & 7;
-        if (r7 != 0) {
-            in.seek(in.getFilePointer() - r7);
+        ByteBuffer bb = readBytes(in, len, 8, byteOrder);
+        if (bb == null) {
+            return -1;
         }
-
-        final int count = cnt >> 3;
-        Transformer.byteToLong(b, 0, count, dest, destOffset, byteOrder == Endian.BIG_ENDIAN);
+        final int count = bb.remaining() >> 3;
+        bb.asLongBuffer().get(dest, destOffset, count);
         return count;
     }
 
     public static int read(RandomAccessInput in, double[] dest, int destOffset, int len, int byteOrder) throws IOException {
-        byte[] b = new byte[len * 8];
-        int cnt = in.read(b);
-
-        int r7 = cnt & 7;
-        if (r7 != 0) {
-            in.seek(in.getFilePointer() - r7);
+        ByteBuffer bb = readBytes(in, len, 8, byteOrder);
+        if (bb == null) {
+            return -1;
         }
-
-        final int count = cnt >> 3;
-        Transformer.byteToDouble(b, 0, count, dest, destOffset, byteOrder == Endian.BIG_ENDIAN);
+        final int count = bb.remaining() >> 3;
+        bb.asDoubleBuffer().get(dest, destOffset, count);
         return count;
     }
 
+    /**
+     * Read bytes for up to <code>len</code> elements of given size.
+     * If <code>in</code> is BufferedRandomAccessIO then data is taken directly from its current buffer,
+     * otherwise data is read into (bounded) per-thread scratch buffer.
+     * Incomplete trailing element is pushed back to stream.
+     * @return ByteBuffer with whole number of elements (in desired byte order) or null if end of stream reached
+     */
+    private static ByteBuffer readBytes(RandomAccessInput in, int len, int size, int byteOrder) throws IOException {
+        if (len <= 0) {
+            return ByteBuffer.allocate(0);
+        }
+        java.nio.ByteOrder order = byteOrder == Endian.BIG_ENDIAN ? java.nio.ByteOrder.BIG_ENDIAN : java.nio.ByteOrder.LITTLE_ENDIAN;
+        if (in instanceof BufferedRandomAccessIO) {
+            ByteBuffer slice = ((BufferedRandomAccessIO) in).readSlice((int) Math.min((long) len * size, Integer.MAX_VALUE));
+            if (slice == null) {
+                return null;
+            }
+            int r = slice.remaining() % size;
+            if (r != 0) {
+                in.seek(in.getFilePointer() - r);
+                slice.limit(slice.limit() - r);
+            }
+            if (slice.hasRemaining()) {
+                return slice.order(order);
+            }
+            // element crosses buffer boundary
+        }
+        byte[] b = scratch.get();
+        int cnt = in.read(b, 0, Math.min(len, SCRATCH_SIZE / size) * size);
+        if (cnt <= 0) {
+            return null;
+        }
+        while (cnt % size != 0) {
+            int read = in.read(b, cnt, size - cnt % size);
+            if (read <= 0) {
+                break;
+            }
+            cnt += read;
+        }
+        int r = cnt % size;
+        if (r != 0) {
+            in.seek(in.getFilePointer() - r);
+        }
+        return ByteBuffer.wrap(b, 0, cnt - r).order(order);
+    }
+
     public static String readString(DataInput in, int length) throws IOException {
         byte [] b = new byte[length];
         in.readFully(b);
@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) Andrey Kuznetsov. All Rights Reserved.
+ *
+ * http://uio.imagero.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  o Neither the name of Andrey Kuznetsov nor the names of
+ *    its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.imagero.uio;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+
+import com.imagero.uio.bio.IOController;
+import com.imagero.uio.bio.content.Span;
+
+/**
+ * Read list of segments (e.g. TIFF strips or tiles) in parallel.
+ * Every segment is read with its own child stream (see RandomAccessInput.createInputChild),
+ * so source should support concurrent reading of children
+ * (e.g. buffered stream created with UIOStreamBuilder.setConcurrent(true)
+ * or unbuffered file stream, whose children load data under lock of the file and keep its file pointer).
+ * Children are closed after reading, this never closes the source.
+ * Segments are delivered to SegmentHandler in completion order, always in thread which called read().
+ */
+public class SegmentReader {
+
+    public static final int DEFAULT_PARALLELISM = 8;
+
+    private final RandomAccessInput in;
+    private final Executor executor;
+    private int parallelism = DEFAULT_PARALLELISM;
+
+    /**
+     * @param in source stream
+     * @param executor Executor used to read segments or null for default Executor (virtual threads if available)
+     */
+    public SegmentReader(RandomAccessInput in, Executor executor) {
+        if (in == null) {
+            throw new NullPointerException();
+        }
+        this.in = in;
+        this.executor = executor != null ? executor : IOController.getDefaultExecutor();
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param parallelism max count of segments which are read at the same time
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("" + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    public void read(Span[] spans, SegmentHandler handler) throws IOException {
+        long[] offsets = new long[spans.length];
+        long[] lengths = new long[spans.length];
+        for (int i = 0; i < spans.length; i++) {
+            offsets[i] = spans[i].offset;
+            lengths[i] = spans[i].length;
+        }
+        read(offsets, lengths, handler);
+    }
+
+    /**
+     * Read segments and deliver them to handler in completion order.
+     * Method returns after all segments were delivered.
+     * If reading of some segment fails, then remaining segments are cancelled and exception is thrown.
+     * @param offsets segment offsets
+     * @param lengths segment lengths
+     * @param handler SegmentHandler
+     */
+    public void read(long[] offsets, long[] lengths, SegmentHandler handler) throws IOException {
+        if (offsets.length != lengths.length) {
+            throw new IllegalArgumentException("offsets.length != lengths.length");
+        }
+        CompletionService<Segment> cs = new ExecutorCompletionService<Segment>(executor);
+        Future<?>[] futures = new Future<?>[offsets.length];
+        int submitted = 0;
+        int delivered = 0;
+        try {
+            while (delivered < offsets.length) {
+                while (submitted < offsets.length && submitted - delivered < parallelism) {
+                    futures[submitted] = cs.submit(new SegmentTask(submitted, offsets[submitted], lengths[submitted]));
+                    submitted++;
+                }
+                Segment segment = cs.take().get();
+                delivered++;
+                handler.segmentRead(segment);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            for (int i = 0; i < submitted; i++) {
+                futures[i].cancel(false);
+            }
+        }
+    }
+
+    /**
+     * read all segments
+     * @return segment data (in order of given offsets)
+     */
+    public byte[][] readAll(long[] offsets, long[] lengths) throws IOException {
+        final byte[][] res = new byte[offsets.length][];
+        read(offsets, lengths, new SegmentHandler() {
+            public void segmentRead(Segment segment) {
+                res[segment.index] = segment.data;
+            }
+        });
+        return res;
+    }
+
+    class SegmentTask implements Callable<Segment> {
+        final int index;
+        final long offset;
+        final long length;
+
+        SegmentTask(int index, long offset, long length) {
+            this.index = index;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public Segment call() throws Exception {
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Segment too large: " + length);
+            }
+            byte[] data = new byte[(int) length];
+            RandomAccessInput child = in.createInputChild(0, 0, in.getByteOrder(), false);
+            try {
+                child.seek(offset);
+                child.readFully(data);
+            } finally {
+                child.close();
+            }
+            return new Segment(index, offset, data, in.getByteOrder());
+        }
+    }
+
+    public interface SegmentHandler {
+        /**
+         * called for every read segment (in thread which called SegmentReader.read())
+         */
+        void segmentRead(Segment segment) throws IOException;
+    }
+
+    public static class Segment {
+        /**
+         * index of segment in list
+         */
+        public final int index;
+        public final long offset;
+        public final byte[] data;
+        final int byteOrder;
+
+        Segment(int index, long offset, byte[] data, int byteOrder) {
+            this.index = index;
+            this.offset = offset;
+            this.data = data;
+            this.byteOrder = byteOrder;
+        }
+
+        /**
+         * @return stream over segment data (with byte order of source stream)
+         */
+        public RandomAccessInput createInput() throws IOException {
+            return new UIOStreamBuilder(data).setByteOrder(byteOrder).create();
+        }
+    }
+}
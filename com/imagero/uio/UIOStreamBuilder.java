@@ -40,10 +40,13 @@ import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.net.URL;
 import java.sql.Blob;
+import java.util.concurrent.Executor;
 
 import com.imagero.uio.bio.BIOFactory;
 import com.imagero.uio.bio.BufferedRandomAccessIO;
 import com.imagero.uio.bio.ByteArrayRandomAccessIO;
+import com.imagero.uio.bio.ChunkPool;
+import com.imagero.uio.bio.EvictionPolicy;
 import com.imagero.uio.bio.IOController;
 import com.imagero.uio.bio.VariableSizeByteBuffer;
 import com.imagero.uio.bio.content.BlobContent;
@@ -53,6 +56,8 @@ import com.imagero.uio.bio.content.DoubleArrayContent;
 import com.imagero.uio.bio.content.FloatArrayContent;
 import com.imagero.uio.bio.content.IntArrayContent;
 import com.imagero.uio.bio.content.LongArrayContent;
+import com.imagero.uio.bio.content.MappedFileContent;
+import com.imagero.uio.bio.content.PositionalFileContent;
 import com.imagero.uio.bio.content.RandomAccessFileContent;
 import com.imagero.uio.bio.content.ShortArrayContent;
 import com.imagero.uio.bio.content.Span;
@@ -86,6 +91,13 @@ import com.imagero.uio.impl.RandomAccessFileX;
  * @see #setCacheFile
  * @see #setMaxBufferCount
  * @see #setMode
+ * @see #setMemoryMapped
+ * @see #setPositionalIO
+ * @see #setNioBuffers
+ * @see #setChunkPool
+ * @see #setEvictionPolicy
+ * @see #setPrefetch
+ * @see #setConcurrent
  * @see #setStart
  * @see #setLength
  * 
@@ -111,6 +123,26 @@ public class UIOStreamBuilder {
 	Creator creator;
 
 	File cache;
+	boolean persistentCache;
+	long maxCacheMemory;
+	boolean offHeapCache;
+
+	boolean memoryMapped;
+	boolean positionalIO;
+
+	boolean nioBuffers;
+	boolean directBuffers;
+
+	ChunkPool chunkPool;
+
+	EvictionPolicy evictionPolicy;
+
+	int prefetchDepth;
+	Executor prefetchExecutor;
+
+	boolean backgroundFill;
+	Executor fillExecutor;
+	boolean concurrent;
 
 	public static int DEFAULT_CHUNK_SIZE = 256 * 1024;
 	public static int DEFAULT_CHUNK_COUNT = 8;
@@ -378,6 +410,193 @@ public class UIOStreamBuilder {
 		return this;
 	}
 
+	/**
+	 * Cache data of InputStream in memory instead of cache file. Data which
+	 * doesn't fit to memory is spilled to cache file (only for InputStream).
+	 * 
+	 * @param maxMemory
+	 *            max amount of memory used for cached data
+	 * @param offHeap
+	 *            keep cached data in direct ByteBuffers
+	 * @return UIOStreamBuilder
+	 */
+	public UIOStreamBuilder setMaxCacheMemory(long maxMemory, boolean offHeap) {
+		this.maxCacheMemory = maxMemory;
+		this.offHeapCache = offHeap;
+		return this;
+	}
+
+	/**
+	 * Keep cache file (and index of downloaded ranges) after stream is closed,
+	 * so data downloaded once is reused next time (only for URL, cache file
+	 * should be set with setCacheFile).
+	 * 
+	 * @param b
+	 *            boolean
+	 * @return UIOStreamBuilder
+	 */
+	public UIOStreamBuilder setPersistentCache(boolean b) {
+		this.persistentCache = b;
+		return this;
+	}
+
+	/**
+	 * Set if file should be accessed through memory mapped regions (only for
+	 * buffered file streams). Chunks are then copied from page cache instead of
+	 * being read with seek and read calls.
+	 * 
+	 * @param memoryMapped
+	 *            true or false (default value - false)
+	 * @return UIOStreamBuilder
+	 */
+	public UIOStreamBuilder setMemoryMapped(boolean memoryMapped) {
+		this.memoryMapped = memoryMapped;
+		return this;
+	}
+
+	/**
+	 * Set if file should be read and written with positional FileChannel
+	 * methods (only for buffered file streams). Chunks may then be loaded from
+	 * different threads (see setConcurrent and setPrefetch) without lock. File
+	 * is opened by stream itself, but stream becomes unusable if reading thread
+	 * is interrupted during I/O (FileChannel is closed on interrupt).
+	 * 
+	 * @param positionalIO
+	 *            true or false (default value - false)
+	 * @return UIOStreamBuilder
+	 */
+	public UIOStreamBuilder setPositionalIO(boolean positionalIO) {
+		this.positionalIO = positionalIO;
+		return this;
+	}
+
+	/**
+	 * Set if memory chunks should be backed by ByteBuffer instead of byte array
+	 * (for unbuffered streams this parameter is ignored). Together with
+	 * setMemoryMapped(true) and READ_ONLY mode chunks just share mapped pages
+	 * of file, so BufferedRandomAccessIO.readSlice() and read(ByteBuffer) work
+	 * without intermediate copies.
+	 * 
+	 * @param nioBuffers
+	 *            true or false (default value - false)
+	 * @param direct
+	 *            if true then direct ByteBuffers are allocated
+	 * @return UIOStreamBuilder
+	 */
+	public UIOStreamBuilder setNioBuffers(boolean nioBuffers, boolean direct) {
+		this.nioBuffers = nioBuffers;
+		this.directBuffers = direct;
+		return this;
+	}
+
+	/**
+	 * Set pool for memory chunks (for unbuffered streams this parameter is
+	 * ignored). Chunks of evicted buffers and of closed streams are recycled
+	 * by pool, so streams which share pool don't allocate new chunks for every
+	 * buffer miss. Use ChunkPool.getShared() to share chunks with whole JVM.
+	 * 
+	 * @param pool
+	 *            ChunkPool or null (default value - null)
+	 * @return UIOStreamBuilder
+	 */
+	public UIOStreamBuilder setChunkPool(ChunkPool pool) {
+		this.chunkPool = pool;
+		return this;
+	}
+
+	/**
+	 * Set strategy used to choose memory chunk which should be evicted if max
+	 * buffer count is reached - for unbuffered streams this parameter is
+	 * ignored.
+	 * 
+	 * @param evictionPolicy
+	 *            EvictionPolicy (default value - EvictionPolicy.FIFO)
+	 * @return UIOStreamBuilder
+	 * @see IOController#getHitRatio()
+	 */
+	public UIOStreamBuilder setEvictionPolicy(EvictionPolicy evictionPolicy) {
+		this.evictionPolicy = evictionPolicy;
+		return this;
+	}
+
+	/**
+	 * Enable read-ahead for sequential reading - for unbuffered streams this
+	 * parameter is ignored. Next chunks are loaded in background using default
+	 * Executor (virtual threads if available).
+	 * 
+	 * @param depth
+	 *            how much chunks should be loaded ahead (default value - 0, no
+	 *            read-ahead)
+	 * @return UIOStreamBuilder
+	 */
+	public UIOStreamBuilder setPrefetch(int depth) {
+		return setPrefetch(depth, null);
+	}
+
+	/**
+	 * Enable read-ahead for sequential reading - for unbuffered streams this
+	 * parameter is ignored.
+	 * 
+	 * @param depth
+	 *            how much chunks should be loaded ahead (default value - 0, no
+	 *            read-ahead)
+	 * @param executor
+	 *            Executor used to load chunks or null for default Executor
+	 * @return UIOStreamBuilder
+	 */
+	public UIOStreamBuilder setPrefetch(int depth, Executor executor) {
+		if (depth < 0) {
+			throw new IllegalArgumentException(" " + depth);
+		}
+		this.prefetchDepth = depth;
+		this.prefetchExecutor = executor;
+		return this;
+	}
+
+	/**
+	 * Copy InputStream to cache file in background (as fast as source allows),
+	 * readers wait only until data which they need is copied (only for
+	 * InputStream). Default Executor is used.
+	 * 
+	 * @param b
+	 *            boolean
+	 * @return UIOStreamBuilder
+	 */
+	public UIOStreamBuilder setBackgroundFill(boolean b) {
+		return setBackgroundFill(b, null);
+	}
+
+	/**
+	 * Copy InputStream to cache file in background (as fast as source allows),
+	 * readers wait only until data which they need is copied (only for
+	 * InputStream).
+	 * 
+	 * @param b
+	 *            boolean
+	 * @param executor
+	 *            Executor for fill task or null for default Executor
+	 * @return UIOStreamBuilder
+	 */
+	public UIOStreamBuilder setBackgroundFill(boolean b, Executor executor) {
+		this.backgroundFill = b;
+		this.fillExecutor = executor;
+		return this;
+	}
+
+	/**
+	 * Allow streams created from buffered stream (children) to be used by
+	 * different threads at the same time - for unbuffered streams this
+	 * parameter is ignored.
+	 * 
+	 * @param concurrent
+	 *            (default value - false)
+	 * @return UIOStreamBuilder
+	 */
+	public UIOStreamBuilder setConcurrent(boolean concurrent) {
+		this.concurrent = concurrent;
+		return this;
+	}
+
 	/**
 	 * finally create desired stream
 	 * 
@@ -416,6 +635,35 @@ public class UIOStreamBuilder {
 			}
 			return DEFAULT_CHUNK_SIZE;
 		}
+
+		protected IOController createController(int chunkSize, StreamContent content) {
+			return configure(new IOController(chunkSize, content));
+		}
+
+		/**
+		 * apply builder settings to IOController
+		 */
+		protected IOController configure(IOController controller) {
+			if (nioBuffers) {
+				controller.setNioBuffers(true, directBuffers);
+			}
+			if (chunkPool != null) {
+				controller.setChunkPool(chunkPool);
+			}
+			if (maxBufferCount != null) {
+				controller.setMaxBufferCount(maxBufferCount.intValue());
+			}
+			if (evictionPolicy != null) {
+				controller.setEvictionPolicy(evictionPolicy);
+			}
+			if (concurrent) {
+				controller.setConcurrent(true);
+			}
+			if (prefetchDepth > 0) {
+				controller.setPrefetch(prefetchDepth, prefetchExecutor);
+			}
+			return controller;
+		}
 	}
 
 	class FileCreator extends Creator {
@@ -438,8 +686,15 @@ public class UIOStreamBuilder {
 		}
 
 		RandomAccessInput createBuffered() throws IOException {
-			StreamContent bc = new RandomAccessFileContent(fileSource, mode);
-			IOController controller = new IOController(DEFAULT_CHUNK_SIZE, bc);
+			StreamContent bc;
+			if (memoryMapped) {
+				bc = new MappedFileContent(fileSource, mode);
+			} else if (positionalIO) {
+				bc = new PositionalFileContent(fileSource, mode);
+			} else {
+				bc = new RandomAccessFileContent(fileSource, mode);
+			}
+			IOController controller = createController(DEFAULT_CHUNK_SIZE, bc);
 			AbstractRandomAccessInput bio = new BufferedRandomAccessIO(controller);
 			bio.setByteOrder(byteOrder);
 			return bio;
@@ -465,7 +720,7 @@ public class UIOStreamBuilder {
 
 		RandomAccessInput createBuffered() throws IOException {
 			StreamContent bc = new RandomAccessFileContent(rafSource);
-			IOController controller = new IOController(DEFAULT_CHUNK_SIZE, bc);
+			IOController controller = createController(DEFAULT_CHUNK_SIZE, bc);
 			return new BufferedRandomAccessIO(controller);
 		}
 	}
@@ -524,7 +779,7 @@ public class UIOStreamBuilder {
 
 		RandomAccessInput createBuffered() throws IOException {
 			StreamContent content = new ByteArrayContent(byteSource);
-			IOController controller = new IOController(DEFAULT_CHUNK_SIZE, content);
+			IOController controller = createController(DEFAULT_CHUNK_SIZE, content);
 			return new BufferedRandomAccessIO(controller, start != null ? start.longValue() : 0L);
 		}
 	}
@@ -538,12 +793,16 @@ public class UIOStreamBuilder {
 		}
 
 		RandomAccessInput create() throws IOException {
+			ByteArrayRandomAccessIO io;
 			if (start != null) {
 				VariableSizeByteBuffer vsb;
 				vsb = new VariableSizeByteBuffer(byteSource);
-				return new ByteArrayRandomAccessIO(start.intValue(), length != null ? length.intValue() : 0, vsb);
+				io = new ByteArrayRandomAccessIO(start.intValue(), length != null ? length.intValue() : 0, vsb);
+			} else {
+				io = new ByteArrayRandomAccessIO(byteSource);
 			}
-			return new ByteArrayRandomAccessIO(byteSource);
+			io.setByteOrder(getByteOrder());
+			return io;
 		}
 
 		RandomAccessInput createBuffered() throws IOException {
@@ -564,7 +823,7 @@ public class UIOStreamBuilder {
 
 		RandomAccessInput create() throws IOException {
 			StreamContent content = new ShortArrayContent(shortSource);
-			IOController controller = new IOController(DEFAULT_CHUNK_SIZE, content);
+			IOController controller = createController(DEFAULT_CHUNK_SIZE, content);
 			return new BufferedRandomAccessIO(controller, start != null ? start.longValue() : 0L);
 		}
 
@@ -586,7 +845,7 @@ public class UIOStreamBuilder {
 
 		RandomAccessInput create() throws IOException {
 			StreamContent content = new CharArrayContent(charSource);
-			IOController controller = new IOController(DEFAULT_CHUNK_SIZE, content);
+			IOController controller = createController(DEFAULT_CHUNK_SIZE, content);
 			return new BufferedRandomAccessIO(controller, start != null ? start.longValue() : 0L);
 		}
 
@@ -608,7 +867,7 @@ public class UIOStreamBuilder {
 
 		RandomAccessInput create() throws IOException {
 			StreamContent content = new IntArrayContent(intSource);
-			IOController controller = new IOController(DEFAULT_CHUNK_SIZE, content);
+			IOController controller = createController(DEFAULT_CHUNK_SIZE, content);
 			return new BufferedRandomAccessIO(controller, start != null ? start.longValue() : 0L);
 		}
 
@@ -640,7 +899,7 @@ public class UIOStreamBuilder {
 					content = new SpannedRandomAccessInputContent(inputChild, spans);
 				}
 			}
-			IOController controller = new IOController(Math.min(DEFAULT_CHUNK_SIZE, Math.max(1024, getLength())),
+			IOController controller = createController(Math.min(DEFAULT_CHUNK_SIZE, Math.max(1024, getLength())),
 					content);
 			return new BufferedRandomAccessIO(controller, 0L);
 		}
@@ -676,7 +935,7 @@ public class UIOStreamBuilder {
 
 		RandomAccessInput create() throws IOException {
 			StreamContent content = new LongArrayContent(longSource);
-			IOController controller = new IOController(DEFAULT_CHUNK_SIZE, content);
+			IOController controller = createController(DEFAULT_CHUNK_SIZE, content);
 			return new BufferedRandomAccessIO(controller, start != null ? start.longValue() : 0L);
 		}
 
@@ -698,7 +957,7 @@ public class UIOStreamBuilder {
 
 		RandomAccessInput create() throws IOException {
 			StreamContent content = new FloatArrayContent(floatSource);
-			IOController controller = new IOController(DEFAULT_CHUNK_SIZE, content);
+			IOController controller = createController(DEFAULT_CHUNK_SIZE, content);
 			return new BufferedRandomAccessIO(controller, start != null ? start.longValue() : 0L);
 		}
 
@@ -720,7 +979,7 @@ public class UIOStreamBuilder {
 
 		RandomAccessInput create() throws IOException {
 			StreamContent content = new DoubleArrayContent(doubleSource);
-			IOController controller = new IOController(DEFAULT_CHUNK_SIZE, content);
+			IOController controller = createController(DEFAULT_CHUNK_SIZE, content);
 			return new BufferedRandomAccessIO(controller, start != null ? start.longValue() : 0L);
 		}
 
@@ -760,7 +1019,7 @@ public class UIOStreamBuilder {
 			if (cache == null) {
 				cache = createTempFile("urc");
 			}
-			IOController controller = BIOFactory.createIOController(url, cache, getBufferSize());
+			IOController controller = configure(BIOFactory.createIOController(url, cache, getBufferSize(), persistentCache));
 			AbstractRandomAccessInput rio = new BufferedRandomAccessIO(controller);
 			rio.setByteOrder(byteOrder);
 			return rio;
@@ -783,10 +1042,20 @@ public class UIOStreamBuilder {
 			// controller = BIOFactory.createIOController((REO_InputStream)
 			// inputStreamSource, getBufferSize());
 			// } else {
-			if (cache == null) {
-				cache = File.createTempFile("isc", null);
+			if (maxCacheMemory > 0) {
+				controller = configure(BIOFactory.createIOController(inputStreamSource, cache, getBufferSize(),
+						maxCacheMemory, offHeapCache));
+			} else {
+				if (cache == null) {
+					cache = File.createTempFile("isc", null);
+				}
+				Executor executor = null;
+				if (backgroundFill) {
+					executor = fillExecutor != null ? fillExecutor : IOController.getDefaultExecutor();
+				}
+				controller = configure(BIOFactory.createIOController(inputStreamSource, cache, getBufferSize(),
+						executor));
 			}
-			controller = BIOFactory.createIOController(inputStreamSource, cache, getBufferSize());
 			// }
 			AbstractRandomAccessInput bio = new BufferedRandomAccessIO(controller);
 			bio.setByteOrder(byteOrder);
@@ -826,7 +1095,7 @@ public class UIOStreamBuilder {
 		}
 
 		RandomAccessInput create() throws IOException {
-			IOController controller = new IOController(getBufferSize(), new BlobContent(blob));
+			IOController controller = createController(getBufferSize(), new BlobContent(blob));
 			AbstractRandomAccessInput bio = new BufferedRandomAccessIO(controller);
 			bio.setByteOrder(byteOrder);
 			return bio;
@@ -31,11 +31,13 @@
  */
  package com.imagero.uio;
 
+import com.imagero.uio.bio.BufferedRandomAccessIO;
 import com.imagero.uio.xform.XtoByteBE;
 import com.imagero.uio.xform.XtoByteLE;
 
 import java.io.IOException;
 import java.io.DataOutput;
+import java.nio.ByteBuffer;
 
 /**
  * Methods to write data from primitive arrays.
@@ -45,6 +47,18 @@ import java.io.DataOutput;
  * @author Andrey Kuznetsov
  */
 public class WriteUtil {
+
+    /**
+     * size of scratch buffer used for outputs which don't expose their buffers
+     */
+    static final int SCRATCH_SIZE = 32 * 1024;
+
+    private static final ThreadLocal<byte[]> scratch = new ThreadLocal<byte[]>() {
+        protected byte[] initialValue() {
+            return new byte[SCRATCH_SIZE];
+        }
+    };
+
     public static void write(RandomAccessOutput io, short[] data) throws IOException {
         write(io, data, 0, data.length, io.getByteOrder());
     }
@@ -118,19 +132,67 @@ public class WriteUtil {
     }
 
     public static void write(DataOutput io, short[] sh, int offset, int length, int byteOrder) throws IOException {
-        byte[] b = new byte[length << 1];
-        if(byteOrder == Endian.BIG_ENDIAN) {
-            XtoByteBE.shortToByteBE(sh, offset, length, b, 0);
+        if (io instanceof BufferedRandomAccessIO) {
+            BufferedRandomAccessIO bio = (BufferedRandomAccessIO) io;
+            while (length > 0) {
+                ByteBuffer bb = slice(bio, length, 2, byteOrder);
+                if (bb == null) {
+                    bio.writeShort(sh[offset++], byteOrder);
+                    length--;
+                    continue;
+                }
+                int n = bb.remaining() >> 1;
+                bb.asShortBuffer().put(sh, offset, n);
+                offset += n;
+                length -= n;
+            }
+            return;
         }
-        else {
-            XtoByteLE.shortToByteLE(sh, offset, length, b, 0);
+        byte[] b = scratch.get();
+        while (length > 0) {
+            int n = Math.min(length, SCRATCH_SIZE >> 1);
+            if (byteOrder == Endian.BIG_ENDIAN) {
+                XtoByteBE.shortToByteBE(sh, offset, n, b, 0);
+            }
+            else {
+                XtoByteLE.shortToByteLE(sh, offset, n, b, 0);
+            }
+            io.write(b, 0, n << 1);
+            offset += n;
+            length -= n;
         }
-        io.write(b);
     }
 
     public static void write(DataOutput io, char[] sh, int offset, int length, int byteOrder) throws IOException {
-        byte[] b = transform(sh, offset, length, byteOrder);
-        io.write(b);
+        if (io instanceof BufferedRandomAccessIO) {
+            BufferedRandomAccessIO bio = (BufferedRandomAccessIO) io;
+            while (length > 0) {
+                ByteBuffer bb = slice(bio, length, 2, byteOrder);
+                if (bb == null) {
+                    bio.writeChar(sh[offset++], byteOrder);
+                    length--;
+                    continue;
+                }
+                int n = bb.remaining() >> 1;
+                bb.asCharBuffer().put(sh, offset, n);
+                offset += n;
+                length -= n;
+            }
+            return;
+        }
+        byte[] b = scratch.get();
+        while (length > 0) {
+            int n = Math.min(length, SCRATCH_SIZE >> 1);
+            if (byteOrder == Endian.BIG_ENDIAN) {
+                XtoByteBE.charToByte(sh, offset, n, b, 0);
+            }
+            else {
+                XtoByteLE.charToByte(sh, offset, n, b, 0);
+            }
+            io.write(b, 0, n << 1);
+            offset += n;
+            length -= n;
+        }
     }
 
     protected static byte[] transform(char[] sh, int offset, int length, int byteOrder) {
@@ -145,8 +207,35 @@ public class WriteUtil {
     }
 
     public static void write(DataOutput io, int[] source, int offset, int length, int byteOrder) throws IOException {
-        byte[] b = transform(source, offset, length, byteOrder);
-        io.write(b);
+        if (io instanceof BufferedRandomAccessIO) {
+            BufferedRandomAccessIO bio = (BufferedRandomAccessIO) io;
+            while (length > 0) {
+                ByteBuffer bb = slice(bio, length, 4, byteOrder);
+                if (bb == null) {
+                    bio.writeInt(source[offset++], byteOrder);
+                    length--;
+                    continue;
+                }
+                int n = bb.remaining() >> 2;
+                bb.asIntBuffer().put(source, offset, n);
+                offset += n;
+                length -= n;
+            }
+            return;
+        }
+        byte[] b = scratch.get();
+        while (length > 0) {
+            int n = Math.min(length, SCRATCH_SIZE >> 2);
+            if (byteOrder == Endian.BIG_ENDIAN) {
+                XtoByteBE.intToByte(source, offset, n, b, 0);
+            }
+            else {
+                XtoByteLE.intToByte(source, offset, n, b, 0);
+            }
+            io.write(b, 0, n << 2);
+            offset += n;
+            length -= n;
+        }
     }
 
     protected static byte[] transform(int[] source, int offset, int length, int byteOrder) {
@@ -161,8 +250,35 @@ public class WriteUtil {
     }
 
     public static void write(DataOutput io, float[] source, int offset, int length, int byteOrder) throws IOException {
-        byte[] b = transform(source, offset, length, byteOrder);
-        io.write(b);
+        if (io instanceof BufferedRandomAccessIO) {
+            BufferedRandomAccessIO bio = (BufferedRandomAccessIO) io;
+            while (length > 0) {
+                ByteBuffer bb = slice(bio, length, 4, byteOrder);
+                if (bb == null) {
+                    bio.writeFloat(source[offset++], byteOrder);
+                    length--;
+                    continue;
+                }
+                int n = bb.remaining() >> 2;
+                bb.asFloatBuffer().put(source, offset, n);
+                offset += n;
+                length -= n;
+            }
+            return;
+        }
+        byte[] b = scratch.get();
+        while (length > 0) {
+            int n = Math.min(length, SCRATCH_SIZE >> 2);
+            if (byteOrder == Endian.BIG_ENDIAN) {
+                XtoByteBE.floatToByteBE(source, offset, n, b, 0);
+            }
+            else {
+                XtoByteLE.floatToByteLE(source, offset, n, b, 0);
+            }
+            io.write(b, 0, n << 2);
+            offset += n;
+            length -= n;
+        }
     }
 
     protected static byte[] transform(float[] source, int offset, int length, int byteOrder) {
@@ -177,8 +293,35 @@ public class WriteUtil {
     }
 
     public static void write(DataOutput io, long[] source, int offset, int length, int byteOrder) throws IOException {
-        byte[] b = transform(source, offset, length, byteOrder);
-        io.write(b);
+        if (io instanceof BufferedRandomAccessIO) {
+            BufferedRandomAccessIO bio = (BufferedRandomAccessIO) io;
+            while (length > 0) {
+                ByteBuffer bb = slice(bio, length, 8, byteOrder);
+                if (bb == null) {
+                    bio.writeLong(source[offset++], byteOrder);
+                    length--;
+                    continue;
+                }
+                int n = bb.remaining() >> 3;
+                bb.asLongBuffer().put(source, offset, n);
+                offset += n;
+                length -= n;
+            }
+            return;
+        }
+        byte[] b = scratch.get();
+        while (length > 0) {
+            int n = Math.min(length, SCRATCH_SIZE >> 3);
+            if (byteOrder == Endian.BIG_ENDIAN) {
+                XtoByteBE.longToByteBE(source, offset, n, b, 0);
+            }
+            else {
+                XtoByteLE.longToByteLE(source, offset, n, b, 0);
+            }
+            io.write(b, 0, n << 3);
+            offset += n;
+            length -= n;
+        }
     }
 
     protected static byte[] transform(long[] source, int offset, int length, int byteOrder) {
@@ -193,8 +336,35 @@ public class WriteUtil {
     }
 
     public static void write(DataOutput io, double[] source, int offset, int length, int byteOrder) throws IOException {
-        byte[] b = transform(source, offset, length, byteOrder);
-        io.write(b);
+        if (io instanceof BufferedRandomAccessIO) {
+            BufferedRandomAccessIO bio = (BufferedRandomAccessIO) io;
+            while (length > 0) {
+                ByteBuffer bb = slice(bio, length, 8, byteOrder);
+                if (bb == null) {
+                    bio.writeDouble(source[offset++], byteOrder);
+                    length--;
+                    continue;
+                }
+                int n = bb.remaining() >> 3;
+                bb.asDoubleBuffer().put(source, offset, n);
+                offset += n;
+                length -= n;
+            }
+            return;
+        }
+        byte[] b = scratch.get();
+        while (length > 0) {
+            int n = Math.min(length, SCRATCH_SIZE >> 3);
+            if (byteOrder == Endian.BIG_ENDIAN) {
+                XtoByteBE.doubleToByteBE(source, offset, n, b, 0);
+            }
+            else {
+                XtoByteLE.doubleToByteLE(source, offset, n, b, 0);
+            }
+            io.write(b, 0, n << 3);
+            offset += n;
+            length -= n;
+        }
     }
 
     protected static byte[] transform(double[] source, int offset, int length, int byteOrder) {
@@ -207,4 +377,17 @@ public class WriteUtil {
         }
         return b;
     }
+
+    /**
+     * writable slice of current buffer of <code>io</code> for up to <code>count</code> values of given size
+     * @return slice with requested byte order or null if value crosses buffer boundary
+     */
+    private static ByteBuffer slice(BufferedRandomAccessIO io, int count, int size, int byteOrder) throws IOException {
+        int len = Math.min(count, Integer.MAX_VALUE / size) * size;
+        ByteBuffer bb = io.writeSlice(len, size);
+        if (bb != null) {
+            bb.order(byteOrder == Endian.BIG_ENDIAN ? java.nio.ByteOrder.BIG_ENDIAN : java.nio.ByteOrder.LITTLE_ENDIAN);
+        }
+        return bb;
+    }
 }
@@ -154,20 +154,37 @@ public abstract class BitBufferIn {
 	}
     }
 
+    /**
+     * Reads underlying stream in chunks of 4096 bytes, so stream may be read ahead.
+     */
     public static class BitBufferIS extends BitBufferIn {
 	final InputStream in;
+	final byte[] chunk = new byte[4096];
+	int chunkPos;
+	int chunkCount;
 
 	public BitBufferIS(InputStream in) {
 	    this.in = in;
 	}
 
+	private int next() throws IOException {
+	    if (chunkPos == chunkCount) {
+		int r = in.read(chunk, 0, chunk.length);
+		if (r <= 0) {
+		    return -1;
+		}
+		chunkPos = 0;
+		chunkCount = r;
+	    }
+	    return chunk[chunkPos++] & 0xFF;
+	}
+
 	public int peek(int nbits) throws IOException {
 	    if (nbits == 0) {
 		return 0;
 	    }
 	    while (nbits > vbits) {
-		int k = 0;
-		k = in.read();
+		int k = next();
 		position++;
 		if (k == -1) {
 		    if (vbits == 0) {
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) Andrey Kuznetsov. All Rights Reserved.
+ *
+ * http://uio.imagero.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  o Neither the name of Andrey Kuznetsov nor the names of
+ *    its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.imagero.uio.ba;
+
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+
+/**
+ * MSB-first bit reader with 64 bit accumulator over byte array or ByteBuffer.
+ * Accumulator is refilled with one 8 byte load while at least 8 bytes are left,
+ * so after refill() at least 56 bits can be peeked without further checks.
+ * Typical decoder loop:
+ * <pre>
+ * reader.refill();
+ * int code = table[reader.peek(9)];
+ * reader.drop(code &amp; 0xF);
+ * </pre>
+ * Bits after end of data are read as 0.
+ */
+public class BitReader {
+
+    private ByteBuffer source;
+    private int start;
+    private int pos;
+    private int limit;
+
+    /** bits are left aligned, next bit is bit 63 */
+    private long acc;
+    private int vbits;
+    private boolean invertBitOrder;
+
+    public BitReader(byte[] b) {
+        this(b, 0, b.length);
+    }
+
+    public BitReader(byte[] b, int off, int len) {
+        setSource(b, off, len);
+    }
+
+    /**
+     * Bits are read from position to limit of given buffer, buffer position is not changed.
+     */
+    public BitReader(ByteBuffer bb) {
+        setSource(bb);
+    }
+
+    public void setSource(byte[] b, int off, int len) {
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        init(ByteBuffer.wrap(b), off, off + len);
+    }
+
+    public void setSource(ByteBuffer bb) {
+        init(bb.duplicate().order(java.nio.ByteOrder.BIG_ENDIAN), bb.position(), bb.limit());
+    }
+
+    private void init(ByteBuffer bb, int start, int limit) {
+        this.source = bb;
+        this.start = start;
+        this.pos = start;
+        this.limit = limit;
+        this.acc = 0;
+        this.vbits = 0;
+    }
+
+    public boolean isInvertBitOrder() {
+        return invertBitOrder;
+    }
+
+    /**
+     * @param invertBitOrder if true bits in every byte are read LSB first (TIFF FillOrder 2)
+     */
+    public void setInvertBitOrder(boolean invertBitOrder) {
+        if (vbits != 0 && invertBitOrder != this.invertBitOrder) {
+            throw new IllegalStateException("bit order can be changed only at byte boundary with empty buffer");
+        }
+        this.invertBitOrder = invertBitOrder;
+    }
+
+    /**
+     * Fill accumulator.
+     * @return number of bits in accumulator - at least 56 unless end of data is reached
+     */
+    public int refill() {
+        if (vbits > 56) {
+            return vbits;
+        }
+        if (limit - pos >= 8) {
+            long v = source.getLong(pos);
+            if (invertBitOrder) {
+                v = Long.reverseBytes(Long.reverse(v));
+            }
+            acc |= v >>> vbits;
+            pos += (63 - vbits) >>> 3;
+            vbits |= 56;
+        } else {
+            while (vbits <= 56 && pos < limit) {
+                int c = source.get(pos++) & 0xFF;
+                if (invertBitOrder) {
+                    c = Integer.reverse(c) >>> 24;
+                }
+                acc |= (long) c << (56 - vbits);
+                vbits += 8;
+            }
+        }
+        return vbits;
+    }
+
+    /**
+     * Look at next nbits (0 - 32) without consuming them.
+     */
+    public int peek(int nbits) {
+        if (nbits > vbits) {
+            refill();
+        }
+        return (int) ((acc >>> 1) >>> (63 - nbits));
+    }
+
+    /**
+     * Look at next nbits (0 - 56) without refill. Caller is responsible to call refill() before.
+     */
+    public long peekFast(int nbits) {
+        return (acc >>> 1) >>> (63 - nbits);
+    }
+
+    /**
+     * Consume nbits (0 - 56) already present in accumulator.
+     */
+    public void drop(int nbits) {
+        acc <<= nbits;
+        vbits -= nbits;
+    }
+
+    /**
+     * Read nbits (0 - 32).
+     * @throws EOFException if less than nbits left
+     */
+    public int read(int nbits) throws EOFException {
+        int v = peek(nbits);
+        if (nbits > vbits) {
+            throw new EOFException();
+        }
+        drop(nbits);
+        return v;
+    }
+
+    /**
+     * Read nbits (0 - 64).
+     * @throws EOFException if less than nbits left
+     */
+    public long readLong(int nbits) throws EOFException {
+        if (nbits <= 32) {
+            return read(nbits) & 0xFFFFFFFFL;
+        }
+        long hi = read(nbits - 32) & 0xFFFFFFFFL;
+        return (hi << 32) | (read(32) & 0xFFFFFFFFL);
+    }
+
+    public boolean readBit() throws EOFException {
+        return read(1) != 0;
+    }
+
+    public void skipBits(long nbits) throws EOFException {
+        if (nbits > availableBits()) {
+            throw new EOFException();
+        }
+        long target = getBitPosition() + nbits;
+        seek((int) (target >>> 3), (int) target & 7);
+    }
+
+    public void skipToByteBoundary() {
+        drop(vbits & 7);
+    }
+
+    /**
+     * Move to given byte position (relative to start of data) and bit offset (0 - 7, MSB first).
+     */
+    public void seek(int bytePosition, int bitOffset) {
+        int p = start + bytePosition;
+        if (bytePosition < 0 || p > limit || (p == limit && bitOffset > 0)) {
+            throw new IndexOutOfBoundsException("" + bytePosition);
+        }
+        pos = p;
+        acc = 0;
+        vbits = 0;
+        if (bitOffset > 0) {
+            refill();
+            drop(bitOffset);
+        }
+    }
+
+    /**
+     * @return number of bits which are not read yet
+     */
+    public long availableBits() {
+        return vbits + ((long) (limit - pos) << 3);
+    }
+
+    /**
+     * @return position (in bits, relative to start of data) of next bit
+     */
+    public long getBitPosition() {
+        return ((long) (pos - start) << 3) - vbits;
+    }
+
+    /**
+     * @return number of bits currently held in accumulator
+     */
+    public int getVbits() {
+        return vbits;
+    }
+}
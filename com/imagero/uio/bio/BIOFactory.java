@@ -37,6 +37,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
+import java.util.concurrent.Executor;
 import java.util.logging.Logger;
 
 import com.imagero.uio.UIOStreamBuilder;
@@ -119,11 +120,41 @@ public class BIOFactory {
 		return sb;
 	}
 
+	/**
+	 * Create IOController which caches InputStream in memory (at most
+	 * <code>maxMemory</code> bytes, rest is spilled to file).
+	 * 
+	 * @param spillFile
+	 *            file for data which doesn't fit to memory (if null then
+	 *            temporary file is created when needed)
+	 * @param direct
+	 *            keep cached data off-heap
+	 */
+	public static IOController createIOController(InputStream in, File spillFile, int chunkSize, long maxMemory,
+			boolean direct) {
+		StreamContent bc = new MemoryCachedInputStreamContent(in, chunkSize, maxMemory, direct, spillFile);
+		IOController sb = new IOController(chunkSize, bc);
+		return sb;
+	}
+
 	public static IOController createIOController(InputStream in, File tmp, int chunkSize) {
+		return createIOController(in, tmp, chunkSize, null);
+	}
+
+	/**
+	 * @param fillExecutor
+	 *            if not null then stream is copied to cache file by background
+	 *            task on this Executor
+	 */
+	public static IOController createIOController(InputStream in, File tmp, int chunkSize, Executor fillExecutor) {
 		StreamContent bc;
 		if (tmp != null) {
 			try {
-				bc = new FileCachedInputStreamContent(in, tmp);
+				FileCachedInputStreamContent fc = new FileCachedInputStreamContent(in, tmp);
+				if (fillExecutor != null) {
+					fc.startFill(fillExecutor);
+				}
+				bc = fc;
 			} catch (IOException ex) {
 				Logger.getLogger(BIOFactory.class.getName())
 						.warning("Unable to use file cache, switching to memory cache.");
@@ -151,19 +182,28 @@ public class BIOFactory {
 	}
 
 	public static IOController createIOController(URL url, File tmp, int chunkSize) {
+		return createIOController(url, tmp, chunkSize, false);
+	}
+
+	/**
+	 * @param persistent
+	 *            if true then cache file and its index are kept after close
+	 *            and reused next time
+	 */
+	public static IOController createIOController(URL url, File tmp, int chunkSize, boolean persistent) {
 		StreamContent bc;
 		if (tmp != null) {
 			try {
-				bc = new FileCachedHTTPContent(url, tmp);
+				bc = new FileCachedHTTPContent(url, tmp, chunkSize, persistent);
 			} catch (IOException ex) {
 				Logger.getLogger(BIOFactory.class.getName())
 						.warning("Unable to use file cache, switching to memory cache.");
 				Logger.getLogger(BIOFactory.class.getName()).throwing(BIOFactory.class.getName(), "createIOController",
 						ex);
-				bc = new HTTPContent(url);
+				bc = new HTTPContent(url, chunkSize);
 			}
 		} else {
-			bc = new HTTPContent(url);
+			bc = new HTTPContent(url, chunkSize);
 		}
 		IOController sb = new IOController(chunkSize, bc);
 		return sb;
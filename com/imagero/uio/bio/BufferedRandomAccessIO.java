@@ -32,6 +32,7 @@
 package com.imagero.uio.bio;
 
 import java.io.DataOutput;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -57,6 +58,10 @@ public class BufferedRandomAccessIO extends AbstractRandomAccessIO {
 
 	StreamPosition streamPosition = new StreamPosition();
 	final long offset;
+	/**
+	 * stream position of first byte in buffer
+	 */
+	long bufferStart = -1;
 
 	public BufferedRandomAccessIO(IOController controller) {
 		this(controller, 0L);
@@ -72,7 +77,7 @@ public class BufferedRandomAccessIO extends AbstractRandomAccessIO {
 		}
 		this.child = child;
 		this.controller = controller;
-		this.controller.streamCount++;
+		this.controller.addStream();
 		this.offset = offset;
 		bufferPosition = new BufferPosition(controller.bufferSize);
 		seek(0);
@@ -82,27 +87,68 @@ public class BufferedRandomAccessIO extends AbstractRandomAccessIO {
 		controller.setLength(newLength);
 	}
 
+	/**
+	 * @return IOController shared by this stream and its children
+	 */
+	public IOController getController() {
+		return controller;
+	}
+
 	public long flushBefore(long pos) {
 		return controller.flushBefore(pos);
 	}
 
 	protected void prepareBufferForReading(BufferIndex index) throws IOException {
-		if (!index.equals(bufferIndex) || buffer == null || buffer.buf == null) {
+		if (!index.equals(bufferIndex) || buffer == null || !buffer.isLoaded()) {
 			bufferIndex = index;
 			buffer = controller.getBuffer(streamPosition.pos, true);
 		}
 		bufferPosition.pos = (int) ((streamPosition.pos) % controller.bufferSize);
+		bufferStart = streamPosition.pos - bufferPosition.pos;
 	}
 
 	protected void prepareBufferForWriting(BufferIndex index) throws IOException {
-		if (!index.equals(bufferIndex) || buffer == null || buffer.buf == null) {
+		if (!index.equals(bufferIndex) || buffer == null || !buffer.isLoaded()) {
 			bufferIndex = index;
 			buffer = controller.getBuffer(streamPosition.pos, false);
 		}
 		bufferPosition.pos = (int) ((streamPosition.pos) % controller.bufferSize);
+		bufferStart = streamPosition.pos - bufferPosition.pos;
 		buffer.changed = true;
 	}
 
+	@Override
+	protected int availableDirect() {
+		if (!isInBuffer(streamPosition.pos)) {
+			return 0;
+		}
+		bufferPosition.pos = (int) (streamPosition.pos - bufferStart);
+		return buffer.availableForReading(bufferPosition);
+	}
+
+	@Override
+	protected long readDirect(int size, boolean bigEndian) {
+		long v = buffer.readValue(size, bigEndian, bufferPosition);
+		streamPosition.pos += size;
+		return v;
+	}
+
+	@Override
+	protected int availableDirectWrite() {
+		if (!isInBuffer(streamPosition.pos)) {
+			return 0;
+		}
+		bufferPosition.pos = (int) (streamPosition.pos - bufferStart);
+		return buffer.availableForWriting(bufferPosition);
+	}
+
+	@Override
+	protected void writeDirect(long v, int size, boolean bigEndian) {
+		buffer.writeValue(v, size, bigEndian, bufferPosition);
+		buffer.changed = true;
+		streamPosition.pos += size;
+	}
+
 	public long getFilePointer() {
 		return streamPosition.pos - offset;
 	}
@@ -176,18 +222,33 @@ public class BufferedRandomAccessIO extends AbstractRandomAccessIO {
 	}
 
 	private void ensureBuffer(boolean read) throws IOException {
+		if (isInBuffer(streamPosition.pos)) {
+			// fast path - stream position is inside of current buffer
+			bufferPosition.pos = (int) (streamPosition.pos - bufferStart);
+			if (read) {
+				if (buffer.availableForReading(bufferPosition) > 0) {
+					return;
+				}
+			} else if (buffer.availableForWriting(bufferPosition) > 0) {
+				buffer.changed = true;
+				return;
+			}
+		}
 		BufferIndex index = controller.getBufferIndex(streamPosition.pos);
 		if (read) {
-			if (buffer == null || buffer.availableForReading(bufferPosition) <= 0 || bufferIndex != index) {
-				prepareBufferForReading(index);
-			}
+			prepareBufferForReading(index);
 		} else {
-			if (buffer == null || buffer.availableForWriting(bufferPosition) <= 0 || bufferIndex != index) {
-				prepareBufferForWriting(index);
-			}
+			prepareBufferForWriting(index);
 		}
 	}
 
+	/**
+	 * check if given stream position lies in current (loaded) buffer
+	 */
+	private boolean isInBuffer(long pos) {
+		return buffer != null && pos >= bufferStart && pos - bufferStart < controller.bufferSize && buffer.isLoaded();
+	}
+
 	public int read() throws IOException {
 		try {
 			ensureBuffer(true);
@@ -288,7 +349,76 @@ public class BufferedRandomAccessIO extends AbstractRandomAccessIO {
 
 	@Override
 	public int read(ByteBuffer dst) throws IOException {
-		return buffer.read(dst, bufferPosition);
+		int total = 0;
+		while (dst.hasRemaining()) {
+			try {
+				ensureBuffer(true);
+			} catch (EOFException ex) {
+				break;
+			}
+			if (buffer == null) {
+				break;
+			}
+			int rc = buffer.read(dst, bufferPosition);
+			if (rc <= 0) {
+				break;
+			}
+			streamPosition.pos += rc;
+			total += rc;
+		}
+		if (total == 0 && dst.hasRemaining()) {
+			return -1;
+		}
+		return total;
+	}
+
+	/**
+	 * Get read only view of up to <code>length</code> bytes starting at current
+	 * stream position and advance stream position. Only bytes of current buffer
+	 * are returned, so returned ByteBuffer may have less remaining bytes than
+	 * requested. Data is not copied if buffer is backed by array or ByteBuffer,
+	 * so returned view is only valid until buffer is evicted or changed.
+	 * 
+	 * @param length
+	 *            max length of view
+	 * @return ByteBuffer or null if end of stream reached
+	 */
+	public ByteBuffer readSlice(int length) throws IOException {
+		try {
+			ensureBuffer(true);
+		} catch (EOFException ex) {
+			return null;
+		}
+		if (buffer == null || buffer.availableForReading(bufferPosition) <= 0) {
+			return null;
+		}
+		ByteBuffer slice = buffer.slice(length, bufferPosition);
+		streamPosition.pos += slice.remaining();
+		return slice;
+	}
+
+	/**
+	 * Get writable view of current buffer, so data can be encoded directly into
+	 * it. Stream position is advanced by length of returned slice, so caller
+	 * must fill it completely.
+	 * 
+	 * @param length
+	 *            max length of slice
+	 * @param unit
+	 *            length of slice is multiple of unit (e.g. size of primitive)
+	 * @return writable slice or null if current buffer has no space for one
+	 *         unit
+	 */
+	public ByteBuffer writeSlice(int length, int unit) throws IOException {
+		ensureBuffer(false);
+		int n = Math.min(length, buffer.availableForWriting(bufferPosition));
+		n -= n % unit;
+		if (n <= 0) {
+			return null;
+		}
+		ByteBuffer slice = buffer.writableSlice(n, bufferPosition);
+		streamPosition.pos += n;
+		return slice;
 	}
 
 	@Override
@@ -298,6 +428,13 @@ public class BufferedRandomAccessIO extends AbstractRandomAccessIO {
 
 	@Override
 	public int write(ByteBuffer src) throws IOException {
-		return buffer.write(src, bufferPosition);
+		int total = 0;
+		while (src.hasRemaining()) {
+			ensureBuffer(false);
+			int written = buffer.write(src, bufferPosition);
+			streamPosition.pos += written;
+			total += written;
+		}
+		return total;
 	}
 }
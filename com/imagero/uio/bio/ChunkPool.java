@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) Andrey Kuznetsov. All Rights Reserved.
+ *
+ * http://uio.imagero.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  o Neither the name of Andrey Kuznetsov nor the names of
+ *    its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.imagero.uio.bio;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+/**
+ * Pool of byte arrays used as memory chunks by IOController. Chunks of evicted
+ * buffers are returned to pool and reused by next buffer miss of any
+ * IOController which uses same pool. Pool is bounded by total size of pooled
+ * chunks; chunks which don't fit are left to garbage collector.
+ * 
+ * ChunkPool is thread safe and may be shared by all streams (see
+ * getShared()) or only by streams created with same UIOStreamBuilder.
+ */
+public class ChunkPool {
+
+	public static long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+	private static ChunkPool shared;
+
+	private final long maxBytes;
+	private long pooledBytes;
+	private final HashMap<Integer, ArrayDeque<byte[]>> chunks = new HashMap<Integer, ArrayDeque<byte[]>>();
+
+	private long hitCount;
+	private long missCount;
+	private long allocatedBytes;
+	private long recycleCount;
+	private long dropCount;
+
+	/**
+	 * @param maxBytes
+	 *            max total size of pooled chunks
+	 */
+	public ChunkPool(long maxBytes) {
+		if (maxBytes < 0) {
+			throw new IllegalArgumentException("" + maxBytes);
+		}
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * get ChunkPool shared by whole JVM (DEFAULT_MAX_BYTES big)
+	 */
+	public static synchronized ChunkPool getShared() {
+		if (shared == null) {
+			shared = new ChunkPool(DEFAULT_MAX_BYTES);
+		}
+		return shared;
+	}
+
+	/**
+	 * Get chunk of given size. Content of recycled chunks is undefined.
+	 * 
+	 * @param size
+	 *            chunk size
+	 * @return byte array
+	 */
+	public byte[] allocate(int size) {
+		synchronized (this) {
+			ArrayDeque<byte[]> queue = chunks.get(size);
+			if (queue != null && !queue.isEmpty()) {
+				byte[] chunk = queue.pop();
+				pooledBytes -= chunk.length;
+				hitCount++;
+				return chunk;
+			}
+			missCount++;
+			allocatedBytes += size;
+		}
+		return new byte[size];
+	}
+
+	/**
+	 * Return chunk to pool. Chunk must not be used by caller anymore.
+	 * 
+	 * @param chunk
+	 *            byte array (may be null)
+	 */
+	public synchronized void recycle(byte[] chunk) {
+		if (chunk == null) {
+			return;
+		}
+		if (pooledBytes + chunk.length > maxBytes) {
+			dropCount++;
+			return;
+		}
+		ArrayDeque<byte[]> queue = chunks.get(chunk.length);
+		if (queue == null) {
+			queue = new ArrayDeque<byte[]>();
+			chunks.put(chunk.length, queue);
+		}
+		queue.push(chunk);
+		pooledBytes += chunk.length;
+		recycleCount++;
+	}
+
+	/**
+	 * remove all pooled chunks (statistics are not affected)
+	 */
+	public synchronized void clear() {
+		chunks.clear();
+		pooledBytes = 0;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * @return total size of chunks currently held by pool
+	 */
+	public synchronized long getPooledBytes() {
+		return pooledBytes;
+	}
+
+	/**
+	 * @return how much chunks were served from pool
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * @return how much chunks had to be allocated because pool was empty
+	 */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * @return total size of allocated chunks
+	 */
+	public synchronized long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	/**
+	 * @return how much chunks were returned to pool
+	 */
+	public synchronized long getRecycleCount() {
+		return recycleCount;
+	}
+
+	/**
+	 * @return how much chunks were dropped because pool was full
+	 */
+	public synchronized long getDropCount() {
+		return dropCount;
+	}
+
+	/**
+	 * @return hit ratio (0 - 1) or 0 if nothing was allocated yet
+	 */
+	public synchronized double getHitRatio() {
+		long total = hitCount + missCount;
+		return total > 0 ? (double) hitCount / total : 0;
+	}
+
+	public synchronized String toString() {
+		return "ChunkPool[hits=" + hitCount + ", misses=" + missCount + ", allocated=" + allocatedBytes
+				+ ", recycled=" + recycleCount + ", dropped=" + dropCount + ", pooled=" + pooledBytes + "/"
+				+ maxBytes + "]";
+	}
+}
@@ -0,0 +1,78 @@
+package com.imagero.uio.bio;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * EvictionQueue which implements CLOCK (second chance) algorithm. Elements
+ * which were accessed since last pass of clock hand are skipped once.
+ */
+class ClockQueue<E> implements EvictionQueue<E> {
+
+	final int size;
+	final E[] elements;
+	final boolean[] referenced;
+	final HashMap<E, Integer> slots;
+	int hand;
+	int count;
+
+	@SuppressWarnings("unchecked")
+	public ClockQueue(int size) {
+		this.size = size;
+		this.elements = (E[]) new Object[size];
+		this.referenced = new boolean[size];
+		this.slots = new HashMap<E, Integer>(size * 2);
+	}
+
+	public E add(E o) {
+		if (count < size) {
+			elements[count] = o;
+			slots.put(o, Integer.valueOf(count));
+			count++;
+			return null;
+		}
+		while (referenced[hand]) {
+			referenced[hand] = false;
+			hand = (hand + 1) % size;
+		}
+		E victim = elements[hand];
+		slots.remove(victim);
+		elements[hand] = o;
+		slots.put(o, Integer.valueOf(hand));
+		hand = (hand + 1) % size;
+		return victim;
+	}
+
+	public void access(E o) {
+		Integer slot = slots.get(o);
+		if (slot != null) {
+			referenced[slot.intValue()] = true;
+		}
+	}
+
+	public void remove(E o) {
+		Integer slot = slots.remove(o);
+		if (slot == null) {
+			return;
+		}
+		// move last element into free slot, so elements stay contiguous
+		int i = slot.intValue();
+		count--;
+		if (i != count) {
+			elements[i] = elements[count];
+			referenced[i] = referenced[count];
+			slots.put(elements[i], slot);
+		}
+		elements[count] = null;
+		referenced[count] = false;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public Iterator<E> iterator() {
+		return Arrays.asList(elements).subList(0, count).iterator();
+	}
+}
@@ -0,0 +1,43 @@
+package com.imagero.uio.bio;
+
+/**
+ * Strategy used by IOController to choose buffer which should be evicted if
+ * max buffer count is reached.
+ */
+public enum EvictionPolicy {
+	/**
+	 * evict buffers in order in which they were loaded (default)
+	 */
+	FIFO {
+		<E> EvictionQueue<E> createQueue(int size) {
+			return new Ring<E>(size);
+		}
+	},
+	/**
+	 * evict least recently used buffer
+	 */
+	LRU {
+		<E> EvictionQueue<E> createQueue(int size) {
+			return new LRUQueue<E>(size);
+		}
+	},
+	/**
+	 * CLOCK (second chance) - cheap approximation of LRU
+	 */
+	CLOCK {
+		<E> EvictionQueue<E> createQueue(int size) {
+			return new ClockQueue<E>(size);
+		}
+	},
+	/**
+	 * scan resistant segmented LRU - buffers used only once are evicted
+	 * before buffers which were used repeatedly
+	 */
+	SEGMENTED_LRU {
+		<E> EvictionQueue<E> createQueue(int size) {
+			return new SegmentedLRUQueue<E>(size);
+		}
+	};
+
+	abstract <E> EvictionQueue<E> createQueue(int size);
+}
@@ -0,0 +1,40 @@
+package com.imagero.uio.bio;
+
+/**
+ * Queue of loaded buffers. Queue has fixed size and decides which buffer
+ * should be evicted if it is full.
+ * 
+ * @see EvictionPolicy
+ */
+interface EvictionQueue<E> extends Iterable<E> {
+
+	/**
+	 * add element to queue
+	 * 
+	 * @param o
+	 *            element
+	 * @return element removed from queue to make place for new element or null
+	 */
+	E add(E o);
+
+	/**
+	 * notify queue that element was accessed again
+	 * 
+	 * @param o
+	 *            element
+	 */
+	void access(E o);
+
+	/**
+	 * remove element from queue (e.g. if buffer was dropped by flushBefore)
+	 * 
+	 * @param o
+	 *            element
+	 */
+	void remove(E o);
+
+	/**
+	 * @return max count of elements in queue
+	 */
+	int size();
+}
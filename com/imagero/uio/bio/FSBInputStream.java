@@ -16,7 +16,7 @@ class FSBInputStream extends InputStream {
 
     public FSBInputStream(FixedSizeByteBuffer buffer) {
         this.buffer = buffer;
-        position = new BufferPosition(buffer.buf.length);
+        position = new BufferPosition(buffer.capacity());
     }
 
     public FSBInputStream(int offset, UIOBuffer buffer) {
@@ -28,7 +28,7 @@ class FSBRandomAccessIO extends AbstractRandomAccessIO {
     }
 
     public FSBRandomAccessIO(FixedSizeByteBuffer buffer, int offset) {
-        this(buffer, offset, buffer.buf.length - offset);
+        this(buffer, offset, buffer.capacity() - offset);
     }
 
     public FSBRandomAccessIO(FixedSizeByteBuffer buffer, int offset, int length) {
@@ -59,7 +59,7 @@ class FSBRandomAccessIO extends AbstractRandomAccessIO {
     }
 
     public void setLength(long newLength) throws IOException {
-        this.length = (int) Math.min(buffer.buf.length, newLength);
+        this.length = (int) Math.min(buffer.capacity(), newLength);
     }
 
     public void write(int b) throws IOException {
@@ -32,10 +32,17 @@
 package com.imagero.uio.bio;
 
 import com.imagero.uio.RandomAccessIO;
+import com.imagero.uio.bio.content.StreamContent;
+import com.imagero.uio.xform.ByteToXBE;
+import com.imagero.uio.xform.ByteToXLE;
+import com.imagero.uio.xform.XtoByteBE;
+import com.imagero.uio.xform.XtoByteLE;
 
 import java.io.DataOutput;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 /**
  * This class can be used to read from and write to byte array.
@@ -49,6 +56,8 @@ public class FixedSizeByteBuffer implements UIOBuffer {
 
 	boolean changed;
 	BufferIndex index;
+	ChunkPool pool;
+	volatile boolean detached;
 
 	protected FixedSizeByteBuffer(byte buf[]) {
 		this.buf = buf;
@@ -68,6 +77,75 @@ public class FixedSizeByteBuffer implements UIOBuffer {
 		return -1;
 	}
 
+	/**
+	 * read 2, 4 or 8 bytes as one value. Caller must check that enough bytes
+	 * are available.
+	 * 
+	 * @return value in low-order bits
+	 */
+	long readValue(int size, boolean bigEndian, BufferPosition position) {
+		int p = position.pos;
+		position.pos += size;
+		switch (size) {
+		case 2:
+			return bigEndian ? ByteToXBE.byteToShortBE(buf, p) : ByteToXLE.byteToShortLE(buf, p);
+		case 4:
+			return bigEndian ? ByteToXBE.byteToInt(buf, p) : ByteToXLE.byteToInt(buf, p);
+		case 8:
+			return bigEndian ? ByteToXBE.byteToLongBE(buf, p) : ByteToXLE.byteToLongLE(buf, p);
+		default:
+			position.pos = p;
+			throw new IllegalArgumentException("" + size);
+		}
+	}
+
+	/**
+	 * write 2, 4 or 8 low-order bytes of v. Caller must check that enough
+	 * space is available.
+	 */
+	void writeValue(long v, int size, boolean bigEndian, BufferPosition position) {
+		int p = position.pos;
+		switch (size) {
+		case 2:
+			if (bigEndian) {
+				XtoByteBE.shortToByteBE((short) v, buf, p);
+			} else {
+				XtoByteLE.shortToByteLE((short) v, buf, p);
+			}
+			break;
+		case 4:
+			if (bigEndian) {
+				XtoByteBE.intToByte((int) v, buf, p);
+			} else {
+				XtoByteLE.intToByte((int) v, buf, p);
+			}
+			break;
+		case 8:
+			if (bigEndian) {
+				XtoByteBE.longToByteBE(v, buf, p);
+			} else {
+				XtoByteLE.longToByteLE(v, buf, p);
+			}
+			break;
+		default:
+			throw new IllegalArgumentException("" + size);
+		}
+		position.pos = p + size;
+		count = Math.max(count, position.pos);
+	}
+
+	/**
+	 * writable view of length bytes (at most availableForWriting) starting at
+	 * position; position and count are advanced, so caller must fill whole view.
+	 */
+	ByteBuffer writableSlice(int length, BufferPosition position) {
+		int toSlice = Math.max(0, Math.min(length, availableForWriting(position)));
+		ByteBuffer slice = ByteBuffer.wrap(buf, position.pos, toSlice).slice();
+		position.pos += toSlice;
+		count = Math.max(count, position.pos);
+		return slice;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -241,6 +319,145 @@ public class FixedSizeByteBuffer implements UIOBuffer {
 		return toCopy;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.imagero.uio.bio.UIOBuffer#read(java.nio.ByteBuffer,
+	 * com.imagero.uio.bio.BufferPosition)
+	 */
+	@Override
+	public int read(ByteBuffer dst, BufferPosition position) {
+		int toCopy = Math.min(dst.remaining(), availableForReading(position));
+		if (toCopy > 0) {
+			dst.put(buf, position.pos, toCopy);
+			position.pos += toCopy;
+			return toCopy;
+		}
+		return -1;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.imagero.uio.bio.UIOBuffer#write(java.nio.ByteBuffer,
+	 * com.imagero.uio.bio.BufferPosition)
+	 */
+	@Override
+	public int write(ByteBuffer src, BufferPosition position) {
+		int toCopy = Math.min(src.remaining(), availableForWriting(position));
+		if (toCopy > 0) {
+			src.get(buf, position.pos, toCopy);
+			position.pos += toCopy;
+			count = Math.max(count, position.pos);
+		}
+		return toCopy;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.imagero.uio.bio.UIOBuffer#slice(int,
+	 * com.imagero.uio.bio.BufferPosition)
+	 */
+	@Override
+	public ByteBuffer slice(int length, BufferPosition position) {
+		int toSlice = Math.max(0, Math.min(length, availableForReading(position)));
+		ByteBuffer slice = ByteBuffer.wrap(buf, position.pos, toSlice).slice().asReadOnlyBuffer();
+		position.pos += toSlice;
+		return slice;
+	}
+
+	/**
+	 * @return true if buffer holds data, false if it was released
+	 */
+	boolean isLoaded() {
+		return buf != null && !detached;
+	}
+
+	/**
+	 * mark buffer as evicted without releasing its data (other threads may
+	 * still read from it)
+	 */
+	void detach() {
+		detached = true;
+	}
+
+	/**
+	 * release buffer data (used by IOController if buffer is evicted). Data is
+	 * returned to ChunkPool if buffer has one.
+	 */
+	void release() {
+		if (pool != null) {
+			pool.recycle(buf);
+		}
+		buf = null;
+	}
+
+	/**
+	 * allocate new (empty) buffer data
+	 */
+	void allocate(int size) {
+		if (pool != null) {
+			buf = pool.allocate(size);
+			Arrays.fill(buf, (byte) 0);
+		} else {
+			buf = new byte[size];
+		}
+		count = 0;
+	}
+
+	/**
+	 * @return buffer capacity
+	 */
+	int capacity() {
+		return buf.length;
+	}
+
+	/**
+	 * Load buffer from content. If buffer was released, then new buffer data is
+	 * allocated.
+	 * 
+	 * @param content
+	 *            StreamContent
+	 * @param offset
+	 *            stream offset
+	 * @param size
+	 *            buffer size
+	 * @return how much bytes were loaded
+	 */
+	int load(StreamContent content, long offset, int size) throws IOException {
+		if (buf == null) {
+			if (pool != null) {
+				buf = pool.allocate(size);
+				int loaded = content.load(offset, buf);
+				if (loaded < size) {
+					// recycled chunk - clear rest of buffer
+					Arrays.fill(buf, Math.max(loaded, 0), size, (byte) 0);
+				}
+				return loaded;
+			}
+			buf = new byte[size];
+		}
+		return content.load(offset, buf);
+	}
+
+	/**
+	 * Replace buffer data with already loaded data (e.g. prefetched chunk).
+	 */
+	void assign(byte[] data) {
+		if (pool != null && buf != null) {
+			pool.recycle(buf);
+		}
+		buf = data;
+	}
+
+	/**
+	 * Save getCount() bytes of buffer to content.
+	 */
+	void save(StreamContent content, long offset) throws IOException {
+		content.save(offset, 0, buf, count);
+	}
+
 	public RandomAccessIO create() {
 		return new FSBRandomAccessIO(this);
 	}
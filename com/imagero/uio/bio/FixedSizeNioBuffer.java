@@ -0,0 +1,343 @@
+/*
+ * Copyright (c) Andrey Kuznetsov. All Rights Reserved.
+ *
+ * http://uio.imagero.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  o Neither the name of Andrey Kuznetsov nor the names of
+ *    its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.imagero.uio.bio;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.imagero.uio.bio.content.StreamContent;
+
+/**
+ * FixedSizeByteBuffer backed by ByteBuffer (heap, direct or mapped) instead of
+ * byte array. Storage is allocated lazily. If content is read only and can
+ * provide slices of its data (e.g. MappedFileContent), then buffer just wraps
+ * such slice and no data is copied at all. Writing to read only slice makes
+ * private copy of it first. ChunkPool is not used by this buffer.
+ */
+public class FixedSizeNioBuffer extends FixedSizeByteBuffer {
+
+	private static final int TRANSFER_SIZE = 8192;
+
+	ByteBuffer data;
+	final int size;
+	final boolean direct;
+	boolean loaded;
+
+	protected FixedSizeNioBuffer(int size, boolean direct) {
+		super(null);
+		this.size = size;
+		this.direct = direct;
+		this.loaded = true;
+	}
+
+	protected FixedSizeNioBuffer(ByteBuffer data) {
+		super(null);
+		this.data = data;
+		this.size = data.capacity();
+		this.direct = data.isDirect();
+		this.count = data.limit();
+		this.loaded = true;
+	}
+
+	private ByteBuffer allocate() {
+		return direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+	}
+
+	/**
+	 * make sure that data is allocated and writable
+	 */
+	private void ensureWritable() {
+		if (data == null) {
+			data = allocate();
+		} else if (data.isReadOnly()) {
+			ByteBuffer tmp = allocate();
+			ByteBuffer src = data.duplicate();
+			src.clear();
+			tmp.put(src);
+			data = tmp;
+		}
+	}
+
+	/**
+	 * @return duplicate of data with position p and limit p + length
+	 */
+	private ByteBuffer view(int p, int length) {
+		ByteBuffer bb = data.duplicate();
+		bb.limit(p + length);
+		bb.position(p);
+		return bb;
+	}
+
+	@Override
+	public int read(BufferPosition position) {
+		if (availableForReading(position) > 0) {
+			return data.get(position.pos++) & 0xFF;
+		}
+		return -1;
+	}
+
+	@Override
+	long readValue(int size, boolean bigEndian, BufferPosition position) {
+		int p = position.pos;
+		boolean swap = bigEndian != (data.order() == ByteOrder.BIG_ENDIAN);
+		long v;
+		switch (size) {
+		case 2:
+			short s = data.getShort(p);
+			v = swap ? Short.reverseBytes(s) : s;
+			break;
+		case 4:
+			int i = data.getInt(p);
+			v = swap ? Integer.reverseBytes(i) : i;
+			break;
+		case 8:
+			long l = data.getLong(p);
+			v = swap ? Long.reverseBytes(l) : l;
+			break;
+		default:
+			throw new IllegalArgumentException("" + size);
+		}
+		position.pos += size;
+		return v;
+	}
+
+	@Override
+	void writeValue(long v, int size, boolean bigEndian, BufferPosition position) {
+		ensureWritable();
+		int p = position.pos;
+		boolean swap = bigEndian != (data.order() == ByteOrder.BIG_ENDIAN);
+		switch (size) {
+		case 2:
+			data.putShort(p, swap ? Short.reverseBytes((short) v) : (short) v);
+			break;
+		case 4:
+			data.putInt(p, swap ? Integer.reverseBytes((int) v) : (int) v);
+			break;
+		case 8:
+			data.putLong(p, swap ? Long.reverseBytes(v) : v);
+			break;
+		default:
+			throw new IllegalArgumentException("" + size);
+		}
+		position.pos = p + size;
+		count = Math.max(count, position.pos);
+	}
+
+	@Override
+	ByteBuffer writableSlice(int length, BufferPosition position) {
+		int toSlice = Math.max(0, Math.min(length, availableForWriting(position)));
+		ensureWritable();
+		ByteBuffer slice = view(position.pos, toSlice).slice();
+		position.pos += toSlice;
+		count = Math.max(count, position.pos);
+		return slice;
+	}
+
+	@Override
+	public BufferPosition createPosition() {
+		return new BufferPosition(size);
+	}
+
+	@Override
+	public int availableForWriting(BufferPosition position) {
+		int avail = size - position.pos;
+		return avail < 0 ? 0 : avail;
+	}
+
+	@Override
+	public int read(byte[] dest, int offset, int length, BufferPosition position) {
+		int toCopy = Math.max(0, Math.min(length, availableForReading(position)));
+		if (toCopy > 0) {
+			view(position.pos, toCopy).get(dest, offset, toCopy);
+			position.pos += toCopy;
+			return toCopy;
+		}
+		return -1;
+	}
+
+	@Override
+	public int read(ByteBuffer dst, BufferPosition position) {
+		int toCopy = Math.min(dst.remaining(), availableForReading(position));
+		if (toCopy > 0) {
+			dst.put(view(position.pos, toCopy));
+			position.pos += toCopy;
+			return toCopy;
+		}
+		return -1;
+	}
+
+	@Override
+	public ByteBuffer slice(int length, BufferPosition position) {
+		int toSlice = Math.max(0, Math.min(length, availableForReading(position)));
+		if (toSlice == 0) {
+			return ByteBuffer.allocate(0);
+		}
+		ByteBuffer slice = view(position.pos, toSlice).slice().asReadOnlyBuffer();
+		position.pos += toSlice;
+		return slice;
+	}
+
+	@Override
+	public void write(int b, BufferPosition position) {
+		ensureWritable();
+		data.put(position.pos++, (byte) b);
+		count = Math.max(position.pos, count);
+	}
+
+	@Override
+	public int write(byte[] src, int offset, int length, BufferPosition position) {
+		int toCopy = Math.max(0, Math.min(length, availableForWriting(position)));
+		if (toCopy > 0) {
+			ensureWritable();
+			view(position.pos, toCopy).put(src, offset, toCopy);
+			position.pos += toCopy;
+			count = Math.max(count, position.pos);
+		}
+		return toCopy;
+	}
+
+	@Override
+	public int write(ByteBuffer src, BufferPosition position) {
+		int toCopy = Math.min(src.remaining(), availableForWriting(position));
+		if (toCopy > 0) {
+			ensureWritable();
+			ByteBuffer s = src.duplicate();
+			s.limit(s.position() + toCopy);
+			view(position.pos, toCopy).put(s);
+			src.position(src.position() + toCopy);
+			position.pos += toCopy;
+			count = Math.max(count, position.pos);
+		}
+		return toCopy;
+	}
+
+	@Override
+	public void setCount(int count) {
+		this.count = Math.min(Math.max(count, 0), size);
+	}
+
+	@Override
+	public void writeBuffer(OutputStream out, boolean wholeBuffer) throws IOException {
+		writeData(out, null, wholeBuffer ? size : count);
+	}
+
+	@Override
+	public void writeBuffer(DataOutput out, boolean wholeBuffer) throws IOException {
+		writeData(null, out, wholeBuffer ? size : count);
+	}
+
+	@Override
+	public void writeBuffer(OutputStream out) throws IOException {
+		writeData(out, null, size);
+	}
+
+	@Override
+	public void writeBuffer(DataOutput out) throws IOException {
+		writeData(null, out, size);
+	}
+
+	private void writeData(OutputStream out, DataOutput dout, int length) throws IOException {
+		if (data == null) {
+			data = allocate();
+		}
+		ByteBuffer src = view(0, Math.min(length, data.capacity()));
+		byte[] tmp = new byte[Math.min(TRANSFER_SIZE, Math.max(src.remaining(), 1))];
+		while (src.hasRemaining()) {
+			int n = Math.min(tmp.length, src.remaining());
+			src.get(tmp, 0, n);
+			if (out != null) {
+				out.write(tmp, 0, n);
+			} else {
+				dout.write(tmp, 0, n);
+			}
+		}
+	}
+
+	@Override
+	boolean isLoaded() {
+		return loaded && !detached;
+	}
+
+	@Override
+	void release() {
+		data = null;
+		loaded = false;
+	}
+
+	@Override
+	void allocate(int size) {
+		data = allocate();
+		count = 0;
+		loaded = true;
+	}
+
+	@Override
+	int capacity() {
+		return size;
+	}
+
+	@Override
+	int load(StreamContent content, long offset, int size) throws IOException {
+		loaded = true;
+		if (!content.writable()) {
+			ByteBuffer slice = content.slice(offset, this.size);
+			if (slice != null) {
+				data = slice;
+				return slice.remaining();
+			}
+		}
+		if (data == null || data.isReadOnly()) {
+			data = allocate();
+		}
+		ByteBuffer dst = data.duplicate();
+		dst.clear();
+		return content.load(offset, dst);
+	}
+
+	@Override
+	void save(StreamContent content, long offset) throws IOException {
+		if (data != null) {
+			content.save(offset, view(0, count));
+		}
+	}
+
+	public static FixedSizeNioBuffer createBuffer(int size, boolean direct) {
+		return new FixedSizeNioBuffer(size, direct);
+	}
+
+	public static FixedSizeNioBuffer createBuffer(ByteBuffer data) {
+		return new FixedSizeNioBuffer(data);
+	}
+}
@@ -54,13 +54,13 @@ public class IOCInputStream extends InputStream {
 
     public IOCInputStream(IOController controller) {
 	this.controller = controller;
-	controller.streamCount++;
+	controller.addStream();
 	length = controller.length() - offset;
     }
 
     public IOCInputStream(IOController controller, long offset) {
 	this.controller = controller;
-	controller.streamCount++;
+	controller.addStream();
 	this.offset = offset;
 	bufferPosition = new BufferPosition(controller.bufferSize);
 	this.length = controller.length() - offset;
@@ -69,7 +69,7 @@ public class IOCInputStream extends InputStream {
 
     public IOCInputStream(IOController controller, long offset, long length) {
 	this.controller = controller;
-	controller.streamCount++;
+	controller.addStream();
 	this.offset = offset;
 	bufferPosition = new BufferPosition(Math.min(controller.bufferSize, (int) ((length + (offset % controller.bufferSize)) & Integer.MAX_VALUE)));
 	this.length = Math.min(length, controller.length() - offset);
@@ -84,7 +84,7 @@ public class IOCInputStream extends InputStream {
     private void prepareBufferForReading() {
 	BufferIndex index = controller.getBufferIndex(streamPosition.pos);
 
-	if (!index.equals(bufferIndex) || buffer == null || buffer.buf == null) {
+	if (!index.equals(bufferIndex) || buffer == null || !buffer.isLoaded()) {
 	    bufferIndex = index;
 	    try {
 		buffer = controller.getBuffer(streamPosition.pos, true);
@@ -98,7 +98,7 @@ public class IOCInputStream extends InputStream {
     }
 
     public int read() throws IOException {
-	if (buffer == null || bufferPosition.available() <= 0) {
+	if (buffer == null || !buffer.isLoaded() || bufferPosition.available() <= 0) {
 	    prepareBufferForReading();
 	}
 
@@ -110,7 +110,7 @@ public class IOCInputStream extends InputStream {
     }
 
     public int available() throws IOException {
-	if (buffer == null || bufferPosition.available() <= 0) {
+	if (buffer == null || !buffer.isLoaded() || bufferPosition.available() <= 0) {
 	    prepareBufferForReading();
 	}
 	if (buffer != null) {
@@ -121,7 +121,7 @@ public class IOCInputStream extends InputStream {
     }
 
     public long skip(long n) throws IOException {
-	if (buffer == null || bufferPosition.available() <= 0) {
+	if (buffer == null || !buffer.isLoaded() || bufferPosition.available() <= 0) {
 	    prepareBufferForReading();
 	}
 	if (buffer == null) {
@@ -137,7 +137,7 @@ public class IOCInputStream extends InputStream {
     }
 
     public int read(byte[] b, int offset, int length) throws IOException {
-	if (buffer == null || bufferPosition.available() <= 0) {
+	if (buffer == null || !buffer.isLoaded() || bufferPosition.available() <= 0) {
 	    prepareBufferForReading();
 	}
 	if (buffer == null) {
@@ -53,12 +53,12 @@ public class IOCOutputStream extends OutputStream {
 
     public IOCOutputStream(IOController controller) {
         this.controller = controller;
-        controller.streamCount++;
+        controller.addStream();
     }
 
     public IOCOutputStream(IOController controller, long offset) {
         this.controller = controller;
-        controller.streamCount++;
+        controller.addStream();
         this.offset = offset;
         bufferPosition = new BufferPosition(controller.bufferSize);
         seek(0);
@@ -71,7 +71,7 @@ public class IOCOutputStream extends OutputStream {
     protected void prepareBufferForWriting() throws IOException {
         BufferIndex index = controller.getBufferIndex(streamPosition.pos);
 
-        if (!index.equals(bufferIndex) || buffer == null || buffer.buf == null) {
+        if (!index.equals(bufferIndex) || buffer == null || !buffer.isLoaded()) {
             bufferIndex = index;
             buffer = controller.getBuffer(streamPosition.pos, false);
         }
@@ -80,7 +80,7 @@ public class IOCOutputStream extends OutputStream {
     }
 
     private void checkBuffer() throws IOException {
-        if (buffer == null || !(bufferPosition.available() > 0)) {
+        if (buffer == null || !buffer.isLoaded() || !(bufferPosition.available() > 0)) {
             prepareBufferForWriting();
         }
     }
@@ -34,8 +34,12 @@ package com.imagero.uio.bio;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -56,14 +60,31 @@ public class IOController {
 	int bufferSize = UIOStreamBuilder.DEFAULT_CHUNK_SIZE;
 	int arrayLength = 1000;
 	StreamContent content;
-	Ring<FixedSizeByteBuffer> rs;
+	EvictionQueue<FixedSizeByteBuffer> rs;
+	EvictionPolicy evictionPolicy = EvictionPolicy.FIFO;
 	int maxBufferCount = UIOStreamBuilder.DEFAULT_CHUNK_COUNT;
 	long explicitLength;
-	int streamCount;
+	final AtomicInteger streamCount = new AtomicInteger();
+	boolean concurrent;
+	boolean nioBuffers;
+	boolean directBuffers;
+	ChunkPool pool;
+	Prefetcher prefetcher;
+
+	final AtomicLong hitCount = new AtomicLong();
+	final AtomicLong missCount = new AtomicLong();
+	final AtomicLong evictionCount = new AtomicLong();
+
+	/**
+	 * number of lock stripes (power of 2)
+	 */
+	static final int STRIPES = 32;
+	private final Object[] locks = new Object[STRIPES];
+	private final Object queueLock = new Object();
 
 	public IOController(int bufferSize, StreamContent content) {
 		try {
-			long len = content.length();
+			long len = content.isLengthKnown() ? content.length() : 0;
 			if (len > 0) {
 				this.bufferSize = (int) Math.min(bufferSize, Math.max(len, 1024 * 5));
 			} else {
@@ -73,7 +94,26 @@ public class IOController {
 			this.bufferSize = bufferSize;
 		}
 		this.content = content;
-		this.rs = new Ring<FixedSizeByteBuffer>(maxBufferCount);
+		this.rs = evictionPolicy.createQueue(maxBufferCount);
+		for (int i = 0; i < locks.length; i++) {
+			locks[i] = new Object();
+		}
+	}
+
+	/**
+	 * register new stream which uses this controller
+	 */
+	void addStream() {
+		streamCount.incrementAndGet();
+	}
+
+	/**
+	 * get lock for buffer which starts at given offset. Loading and eviction of
+	 * buffer are done while holding its lock, so buffers with different locks
+	 * may be loaded in parallel.
+	 */
+	private Object getLock(long startOffset) {
+		return locks[(int) ((startOffset / bufferSize) & (STRIPES - 1))];
 	}
 
 	final void setLength(long newLength) {
@@ -205,19 +245,23 @@ public class IOController {
 	}
 
 	private FixedSizeByteBuffer getBuffer(int aIndex, int index) {
-		Object[] objects = bufs.checkSize(aIndex);
-		BufferArray ba = (BufferArray) objects[aIndex];
-		if (ba == null) {
-			ba = new BufferArray();
-			objects[aIndex] = ba;
+		synchronized (bufs) {
+			Object[] objects = bufs.checkSize(aIndex);
+			BufferArray ba = (BufferArray) objects[aIndex];
+			if (ba == null) {
+				ba = new BufferArray();
+				objects[aIndex] = ba;
+			}
+			return ba.buffers[index];
 		}
-		return ba.buffers[index];
 	}
 
 	protected void setBuffer(BufferIndex index, FixedSizeByteBuffer buffer) {
-		Object[] objects = bufs.checkSize(index.arrayIndex);
-		BufferArray ba = (BufferArray) objects[index.arrayIndex];
-		ba.buffers[index.index] = buffer;
+		synchronized (bufs) {
+			Object[] objects = bufs.checkSize(index.arrayIndex);
+			BufferArray ba = (BufferArray) objects[index.arrayIndex];
+			ba.buffers[index.index] = buffer;
+		}
 	}
 
 	public long flushBefore(long pos) {
@@ -226,7 +270,22 @@ public class IOController {
 		while (e.hasMoreElements()) {
 			FixedSizeByteBuffer o = e.nextElement();
 			if (o != null) {
-				o.buf = null;
+				long start = getStartOffset(o.index, bufferSize);
+				if (start >= pos) {
+					break;
+				}
+				// remove buffer from table, so it is loaded into new buffer if
+				// it is needed again (detached buffer is never reloaded)
+				synchronized (getLock(start)) {
+					if (getBuffer(o.index) != o) {
+						continue;
+					}
+					setBuffer(o.index, null);
+					synchronized (queueLock) {
+						rs.remove(o);
+					}
+					discard(o);
+				}
 			}
 		}
 		return pos;
@@ -256,51 +315,143 @@ public class IOController {
 	FixedSizeByteBuffer getBuffer(long pos, boolean load) throws IOException {
 		BufferIndex bi = getBufferIndex(pos);
 		long startOffset = getStartOffset(bi, bufferSize);
-		FixedSizeByteBuffer sb = getBuffer(bi);
-		if (sb == null) {
-			sb = FixedSizeByteBuffer.createBuffer(new byte[bufferSize]);
-			setBuffer(bi, sb);
-			sb.index = bi;
-			if (load || (content.canReload() && content.length() >= startOffset + bufferSize)) {
-				long max = content.length();
-				if (pos > max) {
-					return null;
-				}
+		if (load && prefetcher != null) {
+			prefetcher.access(this, startOffset);
+		}
+		FixedSizeByteBuffer sb;
+		synchronized (getLock(startOffset)) {
+			sb = getBuffer(bi);
+			if (sb == null) {
+				missCount.incrementAndGet();
+				sb = createBuffer();
+				setBuffer(bi, sb);
+				sb.index = bi;
+				if (load || (content.canReload() && contentLength() > startOffset)) {
+					// past EOF only reading fails, writing needs existing bytes of chunk
+					if (load && pos > contentLength()) {
+						setBuffer(bi, null);
+						return null;
+					}
 
-				int size = content.load(startOffset, sb.buf);
-				sb.count = size;
-			}
-			if (content.canReload()) {
-				checkBuffers(sb);
-			}
-		} else {
-			if (sb.buf == null) {
-				long max = content.length();
-				if (pos > max) {
-					return null;
+					int size = loadBuffer(sb, startOffset);
+					sb.count = size;
+				} else if (!sb.isLoaded()) {
+					sb.allocate(bufferSize);
+				}
+			} else {
+				if (!sb.isLoaded()) {
+					missCount.incrementAndGet();
+					if (load && pos > contentLength()) {
+						return null;
+					}
+					int size = loadBuffer(sb, startOffset);
+					sb.count = size;
+				} else {
+					hitCount.incrementAndGet();
+				}
+				synchronized (queueLock) {
+					rs.access(sb);
 				}
-				sb.buf = new byte[bufferSize];
-				int size = content.load(startOffset, sb.buf);
-				sb.count = size;
+				return sb;
 			}
 		}
+		// new buffer - evict other buffer if necessary (outside of lock)
+		if (content.canReload()) {
+			checkBuffers(sb);
+		}
 		return sb;
 	}
 
+	/**
+	 * @return content length or Long.MAX_VALUE if it is not known yet (content
+	 *         returns less data at the end of stream)
+	 */
+	long contentLength() throws IOException {
+		return content.isLengthKnown() ? content.length() : Long.MAX_VALUE;
+	}
+
+	private int loadBuffer(FixedSizeByteBuffer sb, long startOffset) throws IOException {
+		if (prefetcher != null) {
+			Prefetcher.Chunk chunk = prefetcher.take(startOffset);
+			if (chunk != null) {
+				sb.assign(chunk.data);
+				return chunk.count;
+			}
+		}
+		return sb.load(content, startOffset, bufferSize);
+	}
+
+	/**
+	 * @return true if buffer which contains given position is loaded
+	 */
+	boolean isLoaded(long pos) {
+		FixedSizeByteBuffer sb = getBuffer(getBufferIndex(pos));
+		return sb != null && sb.isLoaded();
+	}
+
+	private FixedSizeByteBuffer createBuffer() {
+		if (nioBuffers) {
+			return FixedSizeNioBuffer.createBuffer(bufferSize, directBuffers);
+		}
+		if (pool != null || prefetcher != null) {
+			// data is allocated on load
+			FixedSizeByteBuffer sb = FixedSizeByteBuffer.createBuffer(null);
+			sb.pool = pool;
+			return sb;
+		}
+		return FixedSizeByteBuffer.createBuffer(new byte[bufferSize]);
+	}
+
 	private void checkBuffers(FixedSizeByteBuffer buffer0) {
-		FixedSizeByteBuffer buffer = rs.add(buffer0);
-		if (buffer != null && content.writable()) {
-			if (buffer.changed) {
-				try {
-					long offset = getStartOffset(buffer.index, bufferSize);
-					content.save(offset, 0, buffer.buf, buffer.getCount());
-					buffer.changed = false;
-				} catch (IOException ex) {
-					Logger.getLogger(getClass().getName()).log(Level.WARNING, ex.getMessage(), ex);
-				}
+		FixedSizeByteBuffer buffer;
+		synchronized (queueLock) {
+			buffer = rs.add(buffer0);
+		}
+		evict(buffer);
+	}
+
+	private void evict(FixedSizeByteBuffer buffer) {
+		if (buffer == null) {
+			return;
+		}
+		synchronized (getLock(getStartOffset(buffer.index, bufferSize))) {
+			evict0(buffer);
+		}
+	}
+
+	private void evict0(FixedSizeByteBuffer buffer) {
+		if (buffer.changed) {
+			if (!content.writable()) {
+				// changes can't be saved, so buffer stays in memory
+				return;
+			}
+			try {
+				long offset = getStartOffset(buffer.index, bufferSize);
+				buffer.save(content, offset);
+				buffer.changed = false;
+			} catch (IOException ex) {
+				Logger.getLogger(getClass().getName()).log(Level.WARNING, ex.getMessage(), ex);
+				// keep buffer, otherwise changes are lost
+				return;
 			}
+		}
+		evictionCount.incrementAndGet();
+		if (getBuffer(buffer.index) == buffer) {
 			setBuffer(buffer.index, null);
-			buffer.buf = null;
+		}
+		discard(buffer);
+	}
+
+	/**
+	 * Drop buffer data. In concurrent mode other threads may still read from
+	 * buffer, so buffer is only marked as detached and its data is left to
+	 * garbage collector.
+	 */
+	private void discard(FixedSizeByteBuffer buffer) {
+		if (concurrent) {
+			buffer.detach();
+		} else {
+			buffer.release();
 		}
 	}
 
@@ -321,7 +472,7 @@ public class IOController {
 			FixedSizeByteBuffer buffer = e.nextElement();
 			if (buffer != null && buffer.changed) {
 				long offset = getStartOffset(buffer.index, bufferSize);
-				content.save(offset, 0, buffer.buf, buffer.getCount());
+				buffer.save(content, offset);
 				buffer.changed = false;
 			}
 		}
@@ -335,6 +486,204 @@ public class IOController {
 		return res;
 	}
 
+	/**
+	 * determine if buffers are backed by ByteBuffer instead of byte array
+	 */
+	public boolean isNioBuffers() {
+		return nioBuffers;
+	}
+
+	/**
+	 * define if buffers should be backed by ByteBuffer instead of byte array.
+	 * If content is read only and supports slices (e.g. MappedFileContent), then
+	 * buffers share data with content and nothing is copied. Already loaded
+	 * buffers are not affected.
+	 * 
+	 * @param nioBuffers
+	 *            if true then FixedSizeNioBuffer is used
+	 * @param direct
+	 *            if true then direct ByteBuffers are allocated
+	 */
+	public void setNioBuffers(boolean nioBuffers, boolean direct) {
+		this.nioBuffers = nioBuffers;
+		this.directBuffers = nioBuffers && direct;
+	}
+
+	public EvictionPolicy getEvictionPolicy() {
+		return evictionPolicy;
+	}
+
+	/**
+	 * Set strategy used to choose buffer which is evicted if max buffer count
+	 * is reached (default - EvictionPolicy.FIFO).
+	 */
+	public void setEvictionPolicy(EvictionPolicy evictionPolicy) {
+		if (evictionPolicy == null) {
+			throw new NullPointerException();
+		}
+		this.evictionPolicy = evictionPolicy;
+		rebuildQueue();
+	}
+
+	public int getMaxBufferCount() {
+		return maxBufferCount;
+	}
+
+	/**
+	 * Set max count of buffers which are held in memory (only for content
+	 * which can be reloaded).
+	 */
+	public void setMaxBufferCount(int maxBufferCount) {
+		if (maxBufferCount < 1) {
+			throw new IllegalArgumentException("" + maxBufferCount);
+		}
+		this.maxBufferCount = maxBufferCount;
+		rebuildQueue();
+	}
+
+	/**
+	 * move loaded buffers into new EvictionQueue (evicting buffers which don't
+	 * fit anymore)
+	 */
+	private void rebuildQueue() {
+		ArrayList<FixedSizeByteBuffer> evicted = new ArrayList<FixedSizeByteBuffer>();
+		synchronized (queueLock) {
+			EvictionQueue<FixedSizeByteBuffer> old = rs;
+			rs = evictionPolicy.createQueue(maxBufferCount);
+			for (FixedSizeByteBuffer buffer : old) {
+				FixedSizeByteBuffer e = rs.add(buffer);
+				if (e != null) {
+					evicted.add(e);
+				}
+			}
+		}
+		for (FixedSizeByteBuffer buffer : evicted) {
+			evict(buffer);
+		}
+	}
+
+	/**
+	 * @return how much times requested buffer was already loaded
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * @return how much times requested buffer had to be (re)loaded or created
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * @return how much buffers were evicted
+	 */
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	/**
+	 * @return hit ratio (0 - 1) or 0 if no buffer was requested yet
+	 */
+	public double getHitRatio() {
+		long hits = hitCount.get();
+		long total = hits + missCount.get();
+		return total > 0 ? (double) hits / total : 0;
+	}
+
+	public void resetStatistics() {
+		hitCount.set(0);
+		missCount.set(0);
+		evictionCount.set(0);
+	}
+
+	/**
+	 * @return how much chunks are loaded ahead (0 if read-ahead is disabled)
+	 */
+	public int getPrefetchDepth() {
+		return prefetcher != null ? prefetcher.depth : 0;
+	}
+
+	/**
+	 * Enable or disable read-ahead. If chunks are read sequentially, then next
+	 * <code>depth</code> chunks are loaded from content in background. Access
+	 * to content is synchronized if read-ahead is enabled. Only content which
+	 * can be reloaded and byte array based buffers are supported, otherwise
+	 * this call is ignored.
+	 * 
+	 * @param depth
+	 *            how much chunks should be loaded ahead (0 to disable
+	 *            read-ahead)
+	 * @param executor
+	 *            Executor for background loading or null for default Executor
+	 *            (virtual threads if available)
+	 */
+	public void setPrefetch(int depth, Executor executor) {
+		if (prefetcher != null) {
+			prefetcher.cancel();
+			prefetcher = null;
+		}
+		if (depth > 0 && !nioBuffers && content.canReload()) {
+			synchronizeContent();
+			prefetcher = new Prefetcher(depth, executor);
+		}
+	}
+
+	/**
+	 * @return Executor used for background loading if no Executor was
+	 *         specified (virtual threads if available)
+	 */
+	public static Executor getDefaultExecutor() {
+		return Prefetcher.getDefaultExecutor();
+	}
+
+	public ChunkPool getChunkPool() {
+		return pool;
+	}
+
+	/**
+	 * Set ChunkPool used to allocate memory chunks. Chunks of evicted buffers
+	 * (and of all buffers after close if content can be reloaded) are returned
+	 * to pool. Only byte array based buffers use pool.
+	 * 
+	 * @param pool
+	 *            ChunkPool or null
+	 */
+	public void setChunkPool(ChunkPool pool) {
+		this.pool = pool;
+	}
+
+	public boolean isConcurrent() {
+		return concurrent;
+	}
+
+	/**
+	 * Define if streams which share this controller may be used by different
+	 * threads at the same time. Buffers are loaded and evicted under striped
+	 * locks, so streams which read different chunks don't block each other.
+	 * In concurrent mode evicted buffers are detached instead of being
+	 * released or recycled, because other threads may still read from them.
+	 * Access to content is synchronized unless content is positional
+	 * (see StreamContent.isPositional()). Concurrent reading is supported,
+	 * writing streams must be synchronized by caller.
+	 */
+	public void setConcurrent(boolean concurrent) {
+		this.concurrent = concurrent;
+		if (concurrent) {
+			synchronizeContent();
+		}
+	}
+
+	/**
+	 * synchronize access to content unless content supports positional access
+	 */
+	private void synchronizeContent() {
+		if (!content.isPositional()) {
+			setSynchronizedContent(true);
+		}
+	}
+
 	/**
 	 * determine if access to stream content is synchronized
 	 */
@@ -359,18 +708,51 @@ public class IOController {
 	}
 
 	public void close() {
-		if (--streamCount <= 0) {
+		if (streamCount.decrementAndGet() <= 0) {
 			if (content != null) {
+				cancelPrefetch();
+				recycleBuffers();
 				content.close();
 			}
 		}
 	}
 
 	public void closeAll() {
-		streamCount = 0;
+		streamCount.set(0);
+		cancelPrefetch();
+		recycleBuffers();
 		content.close();
 	}
 
+	private void cancelPrefetch() {
+		if (prefetcher != null) {
+			prefetcher.cancel();
+		}
+	}
+
+	/**
+	 * return chunks of all buffers to pool (only if data can be reloaded, so
+	 * nothing is lost)
+	 */
+	private void recycleBuffers() {
+		if (pool == null || !content.canReload()) {
+			return;
+		}
+		try {
+			sync();
+		} catch (IOException ex) {
+			Logger.getLogger(getClass().getName()).log(Level.WARNING, ex.getMessage(), ex);
+			return;
+		}
+		Enumeration<FixedSizeByteBuffer> e = buffers(true);
+		while (e.hasMoreElements()) {
+			FixedSizeByteBuffer buffer = e.nextElement();
+			if (buffer != null) {
+				buffer.release();
+			}
+		}
+	}
+
 	protected void finalize() throws Throwable {
 		super.finalize();
 		if (content != null) {
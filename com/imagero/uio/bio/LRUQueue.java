@@ -0,0 +1,45 @@
+package com.imagero.uio.bio;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * EvictionQueue which evicts least recently used element.
+ */
+class LRUQueue<E> implements EvictionQueue<E> {
+
+	final int size;
+	final LinkedHashMap<E, Boolean> elements;
+
+	public LRUQueue(int size) {
+		this.size = size;
+		this.elements = new LinkedHashMap<E, Boolean>(size * 2, 0.75f, true);
+	}
+
+	public E add(E o) {
+		E eldest = null;
+		if (elements.size() >= size) {
+			Iterator<E> it = elements.keySet().iterator();
+			eldest = it.next();
+			it.remove();
+		}
+		elements.put(o, Boolean.TRUE);
+		return eldest;
+	}
+
+	public void access(E o) {
+		elements.get(o);
+	}
+
+	public void remove(E o) {
+		elements.remove(o);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public Iterator<E> iterator() {
+		return elements.keySet().iterator();
+	}
+}
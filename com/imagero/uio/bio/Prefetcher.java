@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) Andrey Kuznetsov. All Rights Reserved.
+ *
+ * http://uio.imagero.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  o Neither the name of Andrey Kuznetsov nor the names of
+ *    its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.imagero.uio.bio;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.imagero.uio.bio.content.StreamContent;
+
+/**
+ * Read-ahead for IOController. If chunks are requested sequentially, then
+ * next chunks are loaded from StreamContent in background, so reader seldom
+ * has to wait for content. Prefetched data is handed over to IOController
+ * only on reader thread (see take()), so buffer management of IOController
+ * is never touched by background threads.
+ */
+class Prefetcher {
+
+	private static Executor defaultExecutor;
+
+	final Executor executor;
+	final int depth;
+
+	private final HashMap<Long, Load> pending = new HashMap<Long, Load>();
+
+	private long lastStart = -1;
+	private int run;
+
+	/**
+	 * end of stream as seen by short loads (for content with unknown length)
+	 */
+	private volatile long eof = Long.MAX_VALUE;
+
+	static class Chunk {
+		final byte[] data;
+		final int count;
+
+		Chunk(byte[] data, int count) {
+			this.data = data;
+			this.count = count;
+		}
+	}
+
+	/**
+	 * Background load of one chunk. Discarded load recycles its chunk itself
+	 * when it completes, so discarding never waits for running I/O.
+	 */
+	static class Load implements Callable<Chunk> {
+		final FutureTask<Chunk> future = new FutureTask<Chunk>(this);
+		final Prefetcher prefetcher;
+		final StreamContent content;
+		final ChunkPool pool;
+		final long start;
+		final int size;
+
+		private boolean discarded;
+		private Chunk chunk;
+
+		Load(Prefetcher prefetcher, StreamContent content, ChunkPool pool, long start, int size) {
+			this.prefetcher = prefetcher;
+			this.content = content;
+			this.pool = pool;
+			this.start = start;
+			this.size = size;
+		}
+
+		public Chunk call() throws Exception {
+			synchronized (this) {
+				if (discarded) {
+					return null;
+				}
+			}
+			byte[] data = pool != null ? pool.allocate(size) : new byte[size];
+			int count = content.load(start, data);
+			if (count < size) {
+				prefetcher.eof = Math.min(prefetcher.eof, start + Math.max(count, 0));
+			}
+			if (pool != null && count < size) {
+				Arrays.fill(data, Math.max(count, 0), size, (byte) 0);
+			}
+			Chunk c = new Chunk(data, count);
+			synchronized (this) {
+				if (discarded) {
+					recycle(c);
+					return null;
+				}
+				chunk = c;
+			}
+			return c;
+		}
+
+		/**
+		 * drop this load, chunk is recycled now or when load completes
+		 */
+		void discard() {
+			Chunk c;
+			synchronized (this) {
+				discarded = true;
+				c = chunk;
+				chunk = null;
+			}
+			future.cancel(false);
+			recycle(c);
+		}
+
+		private void recycle(Chunk c) {
+			if (c != null && pool != null) {
+				pool.recycle(c.data);
+			}
+		}
+	}
+
+	/**
+	 * @param depth
+	 *            how much chunks should be loaded ahead
+	 * @param executor
+	 *            Executor or null for default Executor
+	 */
+	Prefetcher(int depth, Executor executor) {
+		if (depth < 1) {
+			throw new IllegalArgumentException("" + depth);
+		}
+		this.depth = depth;
+		this.executor = executor != null ? executor : getDefaultExecutor();
+	}
+
+	/**
+	 * Executor used if no Executor was specified. Virtual threads are used if
+	 * available (java 21+), otherwise cached pool of daemon threads.
+	 */
+	static synchronized Executor getDefaultExecutor() {
+		if (defaultExecutor == null) {
+			try {
+				Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+				defaultExecutor = (ExecutorService) m.invoke(null);
+			} catch (Exception ex) {
+				defaultExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "uio-prefetch");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+			}
+		}
+		return defaultExecutor;
+	}
+
+	/**
+	 * Called by IOController for every chunk requested for reading. If access
+	 * is sequential, then next chunks are scheduled for loading.
+	 * 
+	 * @param controller
+	 *            IOController
+	 * @param start
+	 *            start offset of requested chunk
+	 */
+	synchronized void access(IOController controller, long start) throws IOException {
+		int bufferSize = controller.bufferSize;
+		if (start != lastStart) {
+			if (start == lastStart + bufferSize) {
+				run++;
+			} else {
+				run = 0;
+			}
+			discardOutside(start, start + (long) depth * bufferSize);
+		}
+		lastStart = start;
+		if (run < 1) {
+			return;
+		}
+		// content.length() may block until whole stream is read
+		long length = Math.min(controller.contentLength(), eof);
+		for (int i = 1; i <= depth; i++) {
+			long next = start + (long) i * bufferSize;
+			if (next >= length) {
+				break;
+			}
+			Long key = Long.valueOf(next);
+			if (pending.containsKey(key) || controller.isLoaded(next)) {
+				continue;
+			}
+			Load load = new Load(this, controller.content, controller.pool, next, bufferSize);
+			pending.put(key, load);
+			executor.execute(load.future);
+		}
+	}
+
+	/**
+	 * Take prefetched chunk (waits if chunk is still loading).
+	 * 
+	 * @param start
+	 *            start offset of chunk
+	 * @return Chunk or null if chunk was not prefetched or loading failed
+	 */
+	Chunk take(long start) {
+		Load load;
+		synchronized (this) {
+			load = pending.remove(Long.valueOf(start));
+		}
+		if (load == null) {
+			return null;
+		}
+		try {
+			return load.future.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException ex) {
+			Logger.getLogger(getClass().getName()).log(Level.FINE, ex.getMessage(), ex);
+		}
+		return null;
+	}
+
+	/**
+	 * drop chunks which are outside of read-ahead window of reader (reader
+	 * moved elsewhere, so they would stay in memory until close)
+	 */
+	private void discardOutside(long start, long end) {
+		Iterator<Map.Entry<Long, Load>> it = pending.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Long, Load> e = it.next();
+			long key = e.getKey().longValue();
+			if (key < start || key > end) {
+				it.remove();
+				e.getValue().discard();
+			}
+		}
+	}
+
+	/**
+	 * cancel all pending loads
+	 */
+	synchronized void cancel() {
+		for (Load load : pending.values()) {
+			load.discard();
+		}
+		pending.clear();
+		lastStart = -1;
+		run = 0;
+	}
+}
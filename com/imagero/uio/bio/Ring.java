@@ -1,13 +1,16 @@
 package com.imagero.uio.bio;
 
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  * Ring - minimalistic Ring implementation.
+ * Used as FIFO EvictionQueue.
  *
  * Date: 29.08.2007
  * @author Andrey Kuznetsov
  */
-class Ring <E>{
+class Ring <E> implements EvictionQueue<E> {
 
     E[] elements;
 
@@ -31,4 +34,53 @@ class Ring <E>{
         index = (index + 1) % size;
         return tmp;
     }
+
+    /**
+     * Ring ignores access order
+     */
+    public void access(E o) {
+    }
+
+    public void remove(E o) {
+        for (int i = 0; i < size; i++) {
+            if (elements[i] == o) {
+                elements[i] = null;
+                return;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            int i = nextIndex(0);
+
+            private int nextIndex(int k) {
+                while (k < size && elements[k] == null) {
+                    k++;
+                }
+                return k;
+            }
+
+            public boolean hasNext() {
+                return i < size;
+            }
+
+            public E next() {
+                if (i >= size) {
+                    throw new NoSuchElementException();
+                }
+                E e = elements[i];
+                i = nextIndex(i + 1);
+                return e;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
 }
@@ -0,0 +1,77 @@
+package com.imagero.uio.bio;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Scan resistant EvictionQueue (segmented LRU). New elements are put into
+ * probation segment (FIFO). Elements accessed again while in probation are
+ * promoted to protected segment (LRU), which holds up to 3/4 of queue.
+ * Elements are evicted from probation first, so sequential scan can't push
+ * frequently used elements (e.g. TIFF directory near start of file) out of
+ * queue.
+ */
+class SegmentedLRUQueue<E> implements EvictionQueue<E> {
+
+	final int size;
+	final int protectedSize;
+	final LinkedHashMap<E, Boolean> probation;
+	final LinkedHashMap<E, Boolean> protectedElements;
+
+	public SegmentedLRUQueue(int size) {
+		this.size = size;
+		this.protectedSize = size > 1 ? Math.max(1, size * 3 / 4) : 0;
+		this.probation = new LinkedHashMap<E, Boolean>(size * 2);
+		this.protectedElements = new LinkedHashMap<E, Boolean>(size * 2, 0.75f, true);
+	}
+
+	public E add(E o) {
+		probation.put(o, Boolean.TRUE);
+		if (probation.size() + protectedElements.size() > size) {
+			if (!probation.isEmpty()) {
+				return removeEldest(probation);
+			}
+			return removeEldest(protectedElements);
+		}
+		return null;
+	}
+
+	private E removeEldest(LinkedHashMap<E, Boolean> map) {
+		Iterator<E> it = map.keySet().iterator();
+		E eldest = it.next();
+		it.remove();
+		return eldest;
+	}
+
+	public void access(E o) {
+		if (probation.remove(o) != null) {
+			if (protectedSize == 0) {
+				probation.put(o, Boolean.TRUE);
+				return;
+			}
+			protectedElements.put(o, Boolean.TRUE);
+			if (protectedElements.size() > protectedSize) {
+				probation.put(removeEldest(protectedElements), Boolean.TRUE);
+			}
+		} else {
+			protectedElements.get(o);
+		}
+	}
+
+	public void remove(E o) {
+		if (probation.remove(o) == null) {
+			protectedElements.remove(o);
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public Iterator<E> iterator() {
+		ArrayList<E> list = new ArrayList<E>(probation.keySet());
+		list.addAll(protectedElements.keySet());
+		return list.iterator();
+	}
+}
@@ -63,7 +63,7 @@ public interface UIOBuffer {
 			int available = availableForReading(position);
 			while (totalRead < len && (available = availableForReading(position)) > 0) {
 				int bytesToRead = Math.min((len - totalRead), TRANSFER_SIZE);
-				bytesToRead = Math.min(bytesRead, available);
+				bytesToRead = Math.min(bytesToRead, available);
 				bytesRead = read(buf, 0, bytesToRead, position);
 				if (bytesRead < 0) {
 					break;
@@ -98,4 +98,21 @@ public interface UIOBuffer {
 		}
 	}
 
+	/**
+	 * Create read only view of buffer data starting at current position and
+	 * advance position. Default implementation copies data, implementations
+	 * backed by array or ByteBuffer return view without copying, so returned
+	 * ByteBuffer is only valid as long as buffer is not evicted or changed.
+	 * 
+	 * @param length
+	 *            max length of view
+	 * @return ByteBuffer
+	 */
+	default ByteBuffer slice(int length, BufferPosition position) {
+		int toSlice = Math.max(0, Math.min(length, availableForReading(position)));
+		byte[] dest = new byte[toSlice];
+		int rc = read(dest, 0, toSlice, position);
+		return ByteBuffer.wrap(dest, 0, Math.max(rc, 0)).asReadOnlyBuffer();
+	}
+
 }
\ No newline at end of file
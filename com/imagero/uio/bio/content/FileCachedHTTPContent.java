@@ -31,14 +31,30 @@
  */
 package com.imagero.uio.bio.content;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.net.URL;
-import java.util.ArrayList;
+import java.util.logging.Logger;
 
+import com.imagero.uio.io.IOutils;
+import com.imagero.uio.impl.RandomAccessFileX;
 import com.imagero.uio.impl.TmpRandomAccessFile;
 
 /**
+ * HTTPContent which stores downloaded data in a file.
+ * Cached intervals are tracked with RangeIndex, if requested chunk is cached partially
+ * then only missing parts are fetched (with one multi-range request).
+ * <br>
+ * Persistent cache keeps its file and writes index to &lt;file&gt;.idx on close,
+ * so next time already downloaded data is reused.
  * Date: 05.01.2008
  *
  * @author Andrey Kuznetsov
@@ -46,61 +62,277 @@ import com.imagero.uio.impl.TmpRandomAccessFile;
 public class FileCachedHTTPContent extends HTTPContent {
 
     File tmp;
-    TmpRandomAccessFile tmpRaf;
+    RandomAccessFile tmpRaf;
 
-    ArrayList<Range> ranges = new ArrayList<Range>();
+    RangeIndex index = new RangeIndex();
+
+    boolean persistent;
+    File indexFile;
+
+    /**
+     * length of resource when cached data was downloaded (-1 if not known)
+     */
+    long cachedLength = -1;
+
+    /**
+     * ETag or Last-Modified of resource when cached data was downloaded (null if not known)
+     */
+    String cachedValidator;
+
+    /**
+     * false until persisted data was checked against server
+     */
+    boolean validated = true;
+
+    static final int INDEX_MAGIC = 0x55494F32;
 
     public FileCachedHTTPContent(URL url, File tmp) throws IOException {
-        super(url);
+        this(url, tmp, 64 * 1024);
+    }
+
+    public FileCachedHTTPContent(URL url, File tmp, int firstRequestSize) throws IOException {
+        this(url, tmp, firstRequestSize, false);
+    }
+
+    /**
+     * @param url http or https URL
+     * @param tmp cache file
+     * @param firstRequestSize size of first request, should be same as chunk size of IOController
+     * @param persistent if true then cache file is not deleted and its index is saved on close
+     */
+    public FileCachedHTTPContent(URL url, File tmp, int firstRequestSize, boolean persistent) throws IOException {
+        super(url, firstRequestSize);
         this.tmp = tmp;
-        tmpRaf = new TmpRandomAccessFile(tmp, "rw");
+        this.persistent = persistent;
+        if (persistent) {
+            indexFile = new File(tmp.getPath() + ".idx");
+            tmpRaf = new RandomAccessFileX(tmp, "rw");
+            readIndex();
+        } else {
+            tmpRaf = new TmpRandomAccessFile(tmp, "rw");
+        }
     }
 
-    public int load(long offset, int bpos, byte[] buffer) throws IOException {
-        if (contains(offset, buffer.length - bpos)) {
+    /**
+     * @return index of cached intervals
+     */
+    public RangeIndex getIndex() {
+        return index;
+    }
+
+    public synchronized int load(long offset, int bpos, byte[] buffer) throws IOException {
+        validate();
+        if (streamCache == null && body == null) {
+            long max = reader.getLength() >= 0 ? reader.getLength() : cachedLength;
+            if (max >= 0 && offset >= max) {
+                return 0;
+            }
+            long end = offset + buffer.length - bpos;
+            if (max >= 0) {
+                end = Math.min(end, max);
+            }
+            if (!index.contains(offset, end)) {
+                long[] gaps = index.missing(offset, end);
+                if (gaps.length == 2 && gaps[0] == offset && gaps[1] == end) {
+                    // nothing cached - fetch (and read ahead) from server
+                    return super.load(offset, bpos, buffer);
+                }
+                if (!fetch(gaps)) {
+                    return loadFromStream(offset, bpos, buffer);
+                }
+                if (reader.getLength() >= 0) {
+                    end = Math.min(end, reader.getLength());
+                }
+            }
+            int n = (int) Math.max(0, end - offset);
             tmpRaf.seek(offset);
-            tmpRaf.readFully(buffer, bpos, buffer.length - bpos);
-            return buffer.length - bpos;
+            tmpRaf.readFully(buffer, bpos, n);
+            lastEnd = offset + buffer.length - bpos;
+            return n;
         }
-        int k = super.load(offset, bpos, buffer);
-        if (k > 0) {
-            tmpRaf.seek(offset);
-            tmpRaf.write(buffer, bpos, k);
-            addRange(offset, k);
+        return super.load(offset, bpos, buffer);
+    }
+
+    /**
+     * Check persisted data before it is used: first chunk is requested with If-Range,
+     * if resource was changed (other validator or length) cached data is discarded (see cache).
+     */
+    void validate() throws IOException {
+        if (validated) {
+            return;
+        }
+        validated = true;
+        reader.setIfRange(cachedValidator);
+        try {
+            fetch(0, firstRequestSize);
+        } finally {
+            reader.setIfRange(null);
+        }
+        if (cachedValidator == null && reader.getValidator() == null && index.size() > 0) {
+            Logger.getLogger(getClass().getName()).warning("Server sends no validator, cached data of " + url
+                    + " is checked by length only");
         }
-        return k;
     }
 
-    boolean contains(long offset, int length) {
-        Range r0 = new Range(offset, offset + length);
-        for (int i = 0; i < ranges.size(); i++) {
-            Range r = ranges.get(i);
-            if (r.contains(r0)) {
-                return true;
+    /**
+     * Fetch missing intervals with one multi-range request.
+     * @param gaps start/end pairs
+     * @return false if server doesn't support ranges
+     */
+    boolean fetch(long[] gaps) throws IOException {
+        int count = gaps.length / 2;
+        long[] offsets = new long[count];
+        int[] offs = new int[count];
+        int[] lengths = new int[count];
+        int total = 0;
+        for (int i = 0; i < count; i++) {
+            offsets[i] = gaps[i * 2];
+            lengths[i] = (int) (gaps[i * 2 + 1] - gaps[i * 2]);
+            offs[i] = total;
+            total += lengths[i];
+        }
+        byte[] b = new byte[total];
+        byte[][] buffers = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            buffers[i] = b;
+        }
+        int[] counts = new int[count];
+        try {
+            reader.read(offsets, buffers, offs, lengths, counts);
+        } catch (HTTPRangeReader.RangesNotSupportedException ex) {
+            startStreaming(ex);
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            if (counts[i] > 0) {
+                cache(offsets[i], b, offs[i], counts[i]);
             }
         }
-        return false;
+        return true;
     }
 
-    void addRange(long offset, int length) {
-        Range r0 = new Range(offset, offset + length);
-
-        for (int i = 0; i < ranges.size(); i++) {
-            Range r = ranges.get(i);
-            if (r.canJoin(r0)) {
-                r.join(r0);
-                for (int j = 0; j < ranges.size(); j++) {
-                    Range r1 = ranges.get(j);
-                    if (r != r1 && r.canJoin(r1)) {
-                        r.join(r1);
-                        j--;
-                        ranges.remove(r1);
-                    }
-                }
+    /**
+     * Don't download again what is already cached.
+     */
+    protected long limitFetch(long offset, long size) {
+        long[] gaps = index.missing(offset, offset + size);
+        if (gaps.length > 0 && gaps[0] == offset) {
+            return gaps[1] - offset;
+        }
+        return size;
+    }
+
+    /**
+     * Everything received from server (including read-ahead) goes to cache file.
+     */
+    protected void cache(long offset, byte[] b, int off, int len) throws IOException {
+        long length = reader.getLength();
+        String validator = reader.getValidator();
+        boolean changed = (length >= 0 && cachedLength >= 0 && cachedLength != length)
+                || (validator != null && cachedValidator != null && !validator.equals(cachedValidator));
+        if (changed) {
+            // resource was changed - forget old data
+            index.clear();
+            tmpRaf.setLength(0);
+        }
+        if (length >= 0) {
+            cachedLength = length;
+        }
+        if (validator != null) {
+            cachedValidator = validator;
+        }
+        tmpRaf.seek(offset);
+        tmpRaf.write(b, off, len);
+        index.add(offset, offset + len);
+    }
+
+    /**
+     * Server doesn't support ranges - cache file is reused as stream cache.
+     */
+    protected StreamContent createStreamCache(InputStream in, int chunkSize) throws IOException {
+        index.clear();
+        cachedLength = -1;
+        cachedValidator = null;
+        tmpRaf.setLength(0);
+        IOutils.closeStream(tmpRaf);
+        if (indexFile != null) {
+            indexFile.delete();
+        }
+        return new FileCachedInputStreamContent(in, tmp);
+    }
+
+    public synchronized long length() throws IOException {
+        validate();
+        if (streamCache == null && body == null && reader.getLength() < 0 && cachedLength >= 0) {
+            return cachedLength;
+        }
+        return super.length();
+    }
+
+    void readIndex() {
+        if (!indexFile.exists()) {
+            return;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            if (in.readInt() != INDEX_MAGIC) {
                 return;
             }
+            String s = in.readUTF();
+            long length = in.readLong();
+            String validator = in.readUTF();
+            if (s.equals(url.toString())) {
+                index.read(in);
+                cachedLength = length;
+                cachedValidator = validator.length() > 0 ? validator : null;
+                validated = false;
+                if (index.getEnd() > tmp.length()) {
+                    index.clear();
+                    cachedLength = -1;
+                    cachedValidator = null;
+                    validated = true;
+                }
+            }
+        } catch (IOException ex) {
+            index.clear();
+            cachedLength = -1;
+            cachedValidator = null;
+            validated = true;
+        } finally {
+            IOutils.closeStream(in);
+        }
+    }
+
+    /**
+     * Write index of persistent cache (also done on close).
+     */
+    public synchronized void saveIndex() throws IOException {
+        if (indexFile == null || streamCache != null) {
+            return;
+        }
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+        try {
+            out.writeInt(INDEX_MAGIC);
+            out.writeUTF(url.toString());
+            out.writeLong(cachedLength);
+            out.writeUTF(cachedValidator != null ? cachedValidator : "");
+            index.write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    public synchronized void close() {
+        if (persistent && !closed) {
+            try {
+                saveIndex();
+            } catch (IOException ex) {
+                indexFile.delete();
+            }
+            IOutils.closeStream(tmpRaf);
         }
-        ranges.add(r0);
+        super.close();
     }
 
     public boolean canReload() {
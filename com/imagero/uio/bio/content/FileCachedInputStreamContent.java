@@ -37,8 +37,21 @@ import com.imagero.uio.io.IOutils;
 import java.io.InputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 /**
+ * Caches InputStream in a file.
+ * <br>
+ * By default stream is copied to file on reader thread (up to requested offset).
+ * After startFill() stream is copied by background task as fast as source allows,
+ * readers wait only until their range is filled.
+ * Only range which was really written (and not file length) is used.
  * Date: 05.01.2008
  * 
  * @author Andrey Kuznetsov
@@ -47,44 +60,181 @@ public class FileCachedInputStreamContent extends StreamContent {
 	private InputStream in;
 	private File tmp;
 	private TmpRandomAccessFile tmpRaf;
-	private boolean closed;
+	private FileChannel channel;
+	private volatile boolean closed;
+
+	private final Object fillLock = new Object();
+	/**
+	 * how much bytes were written to file
+	 */
+	private volatile long filled;
+	private volatile boolean finished;
+	private IOException error;
+	private FutureTask<Long> fillTask;
 
 	public FileCachedInputStreamContent(InputStream in, File tmp) throws IOException {
 		this.in = in;
 		this.tmp = tmp;
 		tmpRaf = new TmpRandomAccessFile(tmp, "rw");
+		channel = tmpRaf.getChannel();
+	}
+
+	/**
+	 * Start background task which copies whole stream to file.
+	 * 
+	 * @param executor
+	 *            Executor for fill task
+	 * @return Future which completes with stream length when whole stream is
+	 *         in file
+	 */
+	public Future<Long> startFill(Executor executor) {
+		synchronized (fillLock) {
+			if (fillTask == null) {
+				fillTask = new FutureTask<Long>(new Callable<Long>() {
+					public Long call() throws Exception {
+						fill(Long.MAX_VALUE);
+						return Long.valueOf(filled);
+					}
+				});
+				executor.execute(fillTask);
+			}
+			return fillTask;
+		}
+	}
+
+	/**
+	 * @return Future of background fill task or null if it was not started
+	 */
+	public Future<Long> getFillFuture() {
+		synchronized (fillLock) {
+			return fillTask;
+		}
 	}
 
 	public int load(long offset, int bpos, byte[] buffer) throws IOException {
-		long length = tmpRaf.length();
-		long nl = offset + buffer.length - bpos;
-		if (length < nl) {
-			tmpRaf.seek(length);
-			IOutils.copy(nl - length, in, tmpRaf);
+		long end = offset + buffer.length - bpos;
+		await(end);
+		long available = filled - offset;
+		if (available <= 0) {
+			return 0;
 		}
-		tmpRaf.seek(offset);
-		length = tmpRaf.length();
+		int length = (int) Math.min(available, buffer.length - bpos);
+		ByteBuffer dst = ByteBuffer.wrap(buffer, bpos, length);
+		long pos = offset;
+		while (dst.hasRemaining()) {
+			int n = channel.read(dst, pos);
+			if (n < 0) {
+				break;
+			}
+			pos += n;
+		}
+		return length - dst.remaining();
+	}
+
+	/**
+	 * Wait until stream is copied up to <code>end</code> (or to its end). If
+	 * background task is not running, data is copied on this thread.
+	 */
+	private void await(long end) throws IOException {
+		if (filled >= end || finished) {
+			checkError();
+			return;
+		}
+		if (getFillFuture() == null) {
+			fill(end);
+			return;
+		}
+		synchronized (fillLock) {
+			while (filled < end && !finished && !closed) {
+				try {
+					fillLock.wait();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException();
+				}
+			}
+		}
+		checkError();
+	}
+
+	private void checkError() throws IOException {
+		synchronized (fillLock) {
+			if (error != null) {
+				throw error;
+			}
+		}
+	}
+
+	/**
+	 * Copy stream to file up to <code>end</code>. Only one thread copies at a
+	 * time.
+	 */
+	private synchronized void fill(long end) throws IOException {
+		byte[] b = null;
 		try {
-			long max = Math.min(length - offset, buffer.length - bpos);
-			int imax = (int) max;
-			imax = imax & Integer.MAX_VALUE;
-			tmpRaf.readFully(buffer, bpos, imax);
-		} catch (Throwable ex) {
-			ex.printStackTrace();
+			while (filled < end && !finished && !closed) {
+				if (b == null) {
+					b = new byte[64 * 1024];
+				}
+				int n = in.read(b);
+				if (n < 0) {
+					finish(null);
+					break;
+				}
+				ByteBuffer src = ByteBuffer.wrap(b, 0, n);
+				long pos = filled;
+				while (src.hasRemaining()) {
+					pos += channel.write(src, pos);
+				}
+				synchronized (fillLock) {
+					filled = pos;
+					fillLock.notifyAll();
+				}
+			}
+		} catch (IOException ex) {
+			finish(ex);
+			throw ex;
+		} catch (RuntimeException ex) {
+			// readers waiting in await() must be released
+			finish(new IOException(ex));
+			throw ex;
+		} catch (Error ex) {
+			finish(new IOException(ex));
+			throw ex;
 		}
-		return buffer.length - bpos;
+		checkError();
+	}
+
+	private void finish(IOException ex) {
+		synchronized (fillLock) {
+			error = ex;
+			finished = true;
+			fillLock.notifyAll();
+		}
+		IOutils.closeStream(in);
 	}
 
 	public void save(long offset, int bpos, byte[] buffer, int length) throws IOException {
 	}
 
+	/**
+	 * Exact stream length. Waits (or copies rest of stream) if end of stream
+	 * was not reached yet.
+	 */
 	public long length() throws IOException {
-		return tmp.length() + in.available();
+		await(Long.MAX_VALUE);
+		return filled;
 	}
 
+	public boolean isLengthKnown() {
+		return finished;
+	}
 
 	public void close() {
 		closed = true;
+		synchronized (fillLock) {
+			fillLock.notifyAll();
+		}
 		IOutils.closeStream(in);
 		IOutils.closeStream(tmpRaf);
 	}
@@ -99,6 +249,10 @@ public class FileCachedInputStreamContent extends StreamContent {
 		return true;
 	}
 
+	public boolean isPositional() {
+		return true;
+	}
+
 	public boolean writable() {
 		return false;
 	}
@@ -32,14 +32,21 @@
 package com.imagero.uio.bio.content;
 
 import com.imagero.uio.io.IOutils;
-import com.imagero.uio.io.UnexpectedEOFException;
 
 import java.net.URL;
-import java.net.HttpURLConnection;
 import java.io.IOException;
 import java.io.InputStream;
 
 /**
+ * StreamContent which loads data from http server with range requests.
+ * <br>
+ * All requests go over one keep-alive connection (see HTTPRangeReader).
+ * Sequential chunk misses are coalesced: every next adjacent miss doubles request size
+ * (up to <code>maxCoalesce</code> chunks), surplus is kept in read-ahead window.
+ * Length is taken from first response, so no separate HEAD request is needed.
+ * <br>
+ * If server doesn't support ranges, whole response body is used as stream
+ * and cached (see createStreamCache).
  * Date: 05.01.2008
  *
  * @author Andrey Kuznetsov
@@ -47,59 +54,265 @@ import java.io.InputStream;
 public class HTTPContent extends StreamContent {
     URL url;
 
-    long length;
+    long length = -1;
+
+    final HTTPRangeReader reader;
+
+    /**
+     * size of first request (sent by length() or first load)
+     */
+    int firstRequestSize;
+
+    /**
+     * max number of adjacent chunks fetched with one request
+     */
+    int maxCoalesce = 8;
+
+    byte[] window;
+    long windowStart;
+    int windowLength;
+
+    long lastEnd = -1;
+    int coalesce = 1;
+
+    /**
+     * body of 200 response (if server ignored Range header)
+     */
+    InputStream body;
+    StreamContent streamCache;
+
+    boolean closed;
 
     public HTTPContent(URL url) {
+        this(url, 64 * 1024);
+    }
+
+    /**
+     * @param url http or https URL
+     * @param firstRequestSize size of first request, should be same as chunk size of IOController
+     */
+    public HTTPContent(URL url, int firstRequestSize) {
         String protocol = url.getProtocol();
-        if (!"http".equalsIgnoreCase(protocol)) {
+        if (!"http".equalsIgnoreCase(protocol) && !"https".equalsIgnoreCase(protocol)) {
             throw new IllegalArgumentException("http protokol only");
         }
         this.url = url;
+        this.firstRequestSize = firstRequestSize;
+        this.reader = new HTTPRangeReader(url);
+    }
+
+    public HTTPRangeReader getReader() {
+        return reader;
+    }
+
+    public int getMaxCoalesce() {
+        return maxCoalesce;
+    }
+
+    /**
+     * Set max number of adjacent chunks which may be fetched with one request.
+     * @param maxCoalesce 1 disables coalescing
+     */
+    public void setMaxCoalesce(int maxCoalesce) {
+        this.maxCoalesce = Math.max(1, maxCoalesce);
+    }
+
+    public synchronized int load(long offset, int bpos, byte[] buffer) throws IOException {
+        int len = buffer.length - bpos;
+        if (streamCache != null || body != null) {
+            return loadFromStream(offset, bpos, buffer);
+        }
+        long known = reader.getLength();
+        if (known >= 0 && offset >= known) {
+            return 0;
+        }
+        boolean sequential = offset == lastEnd;
+        lastEnd = offset + len;
+
+        int k = copyFromWindow(offset, buffer, bpos, len);
+        if (k >= 0) {
+            return k;
+        }
+
+        coalesce = sequential ? Math.min(coalesce * 2, maxCoalesce) : 1;
+        long size = (long) len * coalesce;
+        if (known >= 0) {
+            size = Math.min(size, known - offset);
+        }
+        size = Math.max(limitFetch(offset, size), len);
+        if (!fetch(offset, (int) Math.min(size, Integer.MAX_VALUE - 8))) {
+            return loadFromStream(offset, bpos, buffer);
+        }
+        k = copyFromWindow(offset, buffer, bpos, len);
+        return Math.max(k, 0);
     }
 
-    public int load(long offset, int bpos, byte[] buffer) throws IOException {
-        HttpURLConnection httpcon = (HttpURLConnection) url.openConnection();
-        httpcon.setAllowUserInteraction(true);
-        httpcon.setDoInput(true);
-        httpcon.setDoOutput(true);
-        httpcon.setRequestMethod("GET");
-        httpcon.setUseCaches(false);
-        httpcon.setRequestProperty("Range", "bytes=" + offset + "-" + (offset + buffer.length - bpos));
-        httpcon.connect();
+    /**
+     * Load several chunks with one multi-range request.
+     * Chunks which are already in read-ahead window are not requested.
+     * @param offsets stream offsets, ascending and not overlapping
+     * @param buffers destination arrays
+     * @return how much bytes were loaded for each chunk
+     * @throws IOException
+     */
+    public synchronized int[] load(long[] offsets, byte[][] buffers) throws IOException {
+        int[] counts = new int[buffers.length];
+        int missing = 0;
+        for (int i = 0; i < buffers.length; i++) {
+            int k = -1;
+            if (streamCache == null && body == null) {
+                k = copyFromWindow(offsets[i], buffers[i], 0, buffers[i].length);
+            }
+            counts[i] = k;
+            if (k < 0) {
+                missing++;
+            }
+        }
+        if (missing == 0) {
+            return counts;
+        }
+        if (streamCache == null && body == null) {
+            long[] missOffsets = new long[missing];
+            byte[][] missBuffers = new byte[missing][];
+            int[] index = new int[missing];
+            for (int i = 0, j = 0; i < buffers.length; i++) {
+                if (counts[i] < 0) {
+                    missOffsets[j] = offsets[i];
+                    missBuffers[j] = buffers[i];
+                    index[j++] = i;
+                }
+            }
+            try {
+                int[] k = reader.read(missOffsets, missBuffers);
+                for (int j = 0; j < missing; j++) {
+                    counts[index[j]] = k[j];
+                    if (k[j] > 0) {
+                        cache(missOffsets[j], missBuffers[j], 0, k[j]);
+                    }
+                }
+                return counts;
+            } catch (HTTPRangeReader.RangesNotSupportedException ex) {
+                startStreaming(ex);
+            }
+        }
+        for (int i = 0; i < buffers.length; i++) {
+            if (counts[i] < 0) {
+                counts[i] = loadFromStream(offsets[i], 0, buffers[i]);
+            }
+        }
+        return counts;
+    }
 
-        int responseCode = httpcon.getResponseCode();
-        if (responseCode != 206) {
-            httpcon.disconnect();
-            throw new IOException("byteserving not supported by server");
+    /**
+     * Copy data from read-ahead window.
+     * @return how much bytes were copied or -1 if window doesn't contain requested data
+     */
+    int copyFromWindow(long offset, byte[] buffer, int bpos, int len) {
+        if (windowLength == 0 || offset < windowStart) {
+            return -1;
         }
-        InputStream in = httpcon.getInputStream();
+        long windowEnd = windowStart + windowLength;
+        boolean eof = windowEnd == reader.getLength();
+        if (offset + len > windowEnd && !(eof && offset < windowEnd)) {
+            return -1;
+        }
+        int n = (int) Math.min(len, windowEnd - offset);
+        System.arraycopy(window, (int) (offset - windowStart), buffer, bpos, n);
+        return n;
+    }
 
-        int count = 0;
+    /**
+     * Fetch data to read-ahead window.
+     * @return false if server doesn't support ranges (stream cache should be used)
+     */
+    boolean fetch(long offset, int size) throws IOException {
+        if (window == null || window.length < size) {
+            window = new byte[size];
+        }
+        windowLength = 0;
         try {
-            int len = buffer.length - bpos;
-            count = IOutils.readFully(in, buffer, bpos, len);
-        } finally {
-            httpcon.disconnect();
+            int n = reader.read(offset, window, 0, size);
+            windowStart = offset;
+            windowLength = n;
+            if (n > 0) {
+                cache(offset, window, 0, n);
+            }
+            return true;
+        } catch (HTTPRangeReader.RangesNotSupportedException ex) {
+            startStreaming(ex);
+            return false;
         }
-        return count;
     }
 
-    public void close() {
+    void startStreaming(HTTPRangeReader.RangesNotSupportedException ex) {
+        body = ex.getBody();
+        length = ex.getContentLength();
+        window = null;
+        windowLength = 0;
+    }
+
+    int loadFromStream(long offset, int bpos, byte[] buffer) throws IOException {
+        if (streamCache == null) {
+            streamCache = createStreamCache(body, buffer.length - bpos);
+            body = null;
+        }
+        if (length >= 0 && offset >= length) {
+            return 0;
+        }
+        return streamCache.load(offset, bpos, buffer);
+    }
+
+    /**
+     * Create cache for servers which don't support ranges.
+     * @param in response body
+     * @param chunkSize size of requested chunks
+     */
+    protected StreamContent createStreamCache(InputStream in, int chunkSize) throws IOException {
+        return new MemoryCachedInputStreamContent(in, chunkSize);
+    }
+
+    /**
+     * Limit size of read-ahead request (e.g. if following data is already cached).
+     * @return size of request
+     */
+    protected long limitFetch(long offset, long size) {
+        return size;
+    }
+
+    /**
+     * Called for each block of data received from server.
+     * Default implementation does nothing.
+     */
+    protected void cache(long offset, byte[] b, int off, int len) throws IOException {
+    }
+
+    public synchronized void close() {
+        closed = true;
+        window = null;
+        windowLength = 0;
+        IOutils.closeStream(body);
+        body = null;
+        if (streamCache != null) {
+            streamCache.close();
+        }
     }
 
     public void save(long offset, int bpos, byte[] buffer, int length) throws IOException {
     }
 
-    public long length() throws IOException {
-        if (length == 0) {
-            HttpURLConnection httpcon = (HttpURLConnection) url.openConnection();
-            httpcon.setRequestMethod("HEAD");
-            httpcon.setUseCaches(false);
-            httpcon.connect();
-            length = httpcon.getContentLength();
-            httpcon.disconnect();
+    public synchronized long length() throws IOException {
+        if (streamCache != null || body != null) {
+            return length;
+        }
+        if (reader.getLength() < 0) {
+            if (!fetch(0, firstRequestSize)) {
+                return length;
+            }
+            if (reader.getLength() < 0) {
+                reader.head();
+            }
         }
-        return length;
+        return reader.getLength();
     }
 
     public boolean canReload() {
@@ -112,6 +325,6 @@ public class HTTPContent extends StreamContent {
 
 	@Override
 	public boolean isOpen() {
-		return true;
+		return !closed;
 	}
 }
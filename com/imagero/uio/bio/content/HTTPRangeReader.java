@@ -0,0 +1,479 @@
+/*
+ * Copyright (c) Andrey Kuznetsov. All Rights Reserved.
+ *
+ * http://uio.imagero.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  o Neither the name of Andrey Kuznetsov nor the names of
+ *    its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.imagero.uio.bio.content;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import com.imagero.uio.io.IOutils;
+
+/**
+ * Sends HTTP range requests (single and multi-range) for one URL.
+ * <br>
+ * Response bodies are always read up to their end and closed without disconnecting,
+ * so HttpURLConnection returns the socket to its keep-alive cache
+ * and all requests go over the same persistent connection.
+ * Total length of resource is taken from Content-Range header of first ranged response.
+ * <br>
+ * If server ignores Range header and answers with 200,
+ * <code>RangesNotSupportedException</code> is thrown which holds already opened response body.
+ */
+public class HTTPRangeReader {
+
+    final URL url;
+
+    long length = -1;
+
+    int connectTimeout;
+    int readTimeout;
+
+    int requestCount;
+
+    String etag;
+    String lastModified;
+    String ifRange;
+
+    public HTTPRangeReader(URL url) {
+        this.url = url;
+    }
+
+    /**
+     * @return length of resource or -1 if not known yet
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return how much requests were sent to server
+     */
+    public int getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * @return strong ETag or Last-Modified of last response (null if server sent none)
+     */
+    public String getValidator() {
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return lastModified;
+    }
+
+    /**
+     * Send If-Range with given validator (see getValidator).
+     * If resource doesn't match validator anymore, server sends whole resource,
+     * in this case request is repeated without If-Range (and this validator is cleared).
+     * @param validator validator or null
+     */
+    public void setIfRange(String validator) {
+        this.ifRange = validator;
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Read one range.
+     * @param offset resource offset
+     * @param b destination array
+     * @param off start offset in <code>b</code>
+     * @param len how much bytes to read
+     * @return how much bytes were read (less than <code>len</code> at the end of resource)
+     * @throws RangesNotSupportedException if server answered with 200
+     * @throws IOException
+     */
+    public int read(long offset, byte[] b, int off, int len) throws IOException {
+        int[] counts = new int[1];
+        read(new long[]{offset}, new byte[][]{b}, new int[]{off}, new int[]{len}, counts);
+        return counts[0];
+    }
+
+    /**
+     * Read several ranges with one multi-range request.
+     * Adjacent ranges are merged before request is sent.
+     * @param offsets resource offsets, ascending and not overlapping
+     * @param buffers destination arrays (each one is filled from 0 to its length)
+     * @return how much bytes were read for each range
+     * @throws RangesNotSupportedException if server answered with 200
+     * @throws IOException
+     */
+    public int[] read(long[] offsets, byte[][] buffers) throws IOException {
+        int[] offs = new int[buffers.length];
+        int[] lengths = new int[buffers.length];
+        for (int i = 0; i < buffers.length; i++) {
+            lengths[i] = buffers[i].length;
+        }
+        int[] counts = new int[buffers.length];
+        read(offsets, buffers, offs, lengths, counts);
+        return counts;
+    }
+
+    void read(long[] offsets, byte[][] buffers, int[] offs, int[] lengths, int[] counts) throws IOException {
+        String spec = createRangeSpec(offsets, lengths);
+        if (spec == null) {
+            return;
+        }
+        HttpURLConnection con = open("GET");
+        con.setRequestProperty("Range", spec);
+        if (ifRange != null) {
+            con.setRequestProperty("If-Range", ifRange);
+        }
+        requestCount++;
+        int code = con.getResponseCode();
+        if (code == HttpURLConnection.HTTP_OK || code == HttpURLConnection.HTTP_PARTIAL) {
+            etag = con.getHeaderField("ETag");
+            lastModified = con.getHeaderField("Last-Modified");
+        }
+        if (code == HttpURLConnection.HTTP_OK && ifRange != null) {
+            // resource was changed - ask for ranges of new version
+            ifRange = null;
+            con.disconnect();
+            read(offsets, buffers, offs, lengths, counts);
+            return;
+        }
+        if (code == HttpURLConnection.HTTP_OK) {
+            long contentLength = con.getContentLengthLong();
+            if (contentLength >= 0) {
+                length = contentLength;
+            }
+            throw new RangesNotSupportedException(con.getInputStream(), contentLength);
+        }
+        if (code == 416) {
+            long[] r = parseContentRange(con.getHeaderField("Content-Range"));
+            if (r != null && r[2] >= 0) {
+                length = r[2];
+            }
+            IOutils.closeStream(con.getErrorStream());
+            return;
+        }
+        if (code != HttpURLConnection.HTTP_PARTIAL) {
+            IOutils.closeStream(con.getErrorStream());
+            throw new IOException("Unexpected HTTP response: " + code + " " + con.getResponseMessage());
+        }
+
+        InputStream in = con.getInputStream();
+        try {
+            String contentType = con.getContentType();
+            String boundary = getBoundary(contentType);
+            if (boundary == null) {
+                long[] r = parseContentRange(con.getHeaderField("Content-Range"));
+                if (r == null) {
+                    throw new IOException("Missing Content-Range");
+                }
+                readPart(in, r, offsets, buffers, offs, lengths, counts);
+            } else {
+                readMultipart(new BufferedInputStream(in), boundary, offsets, buffers, offs, lengths, counts);
+            }
+            // read body up to end, otherwise connection can't be reused
+            skipRest(in);
+        } finally {
+            IOutils.closeStream(in);
+        }
+    }
+
+    /**
+     * Send HEAD request. Used only if length can't be determined from ranged response.
+     * @return length of resource or -1
+     */
+    public long head() throws IOException {
+        HttpURLConnection con = open("HEAD");
+        requestCount++;
+        con.getResponseCode();
+        long contentLength = con.getContentLengthLong();
+        IOutils.closeStream(con.getInputStream());
+        if (contentLength >= 0) {
+            length = contentLength;
+        }
+        return contentLength;
+    }
+
+    HttpURLConnection open(String method) throws IOException {
+        HttpURLConnection con = (HttpURLConnection) url.openConnection();
+        con.setRequestMethod(method);
+        con.setUseCaches(false);
+        con.setInstanceFollowRedirects(true);
+        con.setRequestProperty("Accept-Encoding", "identity");
+        if (connectTimeout > 0) {
+            con.setConnectTimeout(connectTimeout);
+        }
+        if (readTimeout > 0) {
+            con.setReadTimeout(readTimeout);
+        }
+        return con;
+    }
+
+    String createRangeSpec(long[] offsets, int[] lengths) {
+        StringBuilder sb = new StringBuilder("bytes=");
+        long first = -1;
+        long last = -1;
+        boolean empty = true;
+        for (int i = 0; i < offsets.length; i++) {
+            long start = offsets[i];
+            long end = start + lengths[i] - 1;
+            if (i > 0 && start < offsets[i - 1] + lengths[i - 1]) {
+                throw new IllegalArgumentException("Ranges should be ascending and not overlapping");
+            }
+            if (length >= 0) {
+                end = Math.min(end, length - 1);
+            }
+            if (end < start) {
+                continue;
+            }
+            if (first >= 0 && start == last + 1) {
+                last = end;
+                continue;
+            }
+            if (first >= 0) {
+                empty = appendRange(sb, first, last, empty);
+            }
+            first = start;
+            last = end;
+        }
+        if (first >= 0) {
+            empty = appendRange(sb, first, last, empty);
+        }
+        return empty ? null : sb.toString();
+    }
+
+    private static boolean appendRange(StringBuilder sb, long first, long last, boolean empty) {
+        if (!empty) {
+            sb.append(',');
+        }
+        sb.append(first).append('-').append(last);
+        return false;
+    }
+
+    void readMultipart(InputStream in, String boundary, long[] offsets, byte[][] buffers, int[] offs, int[] lengths, int[] counts) throws IOException {
+        String delimiter = "--" + boundary;
+        String line;
+        do {
+            line = readLine(in);
+            if (line == null) {
+                throw new EOFException("Missing multipart boundary");
+            }
+        } while (!line.startsWith(delimiter));
+
+        while (!line.startsWith(delimiter + "--")) {
+            long[] r = null;
+            while ((line = readLine(in)) != null && line.length() > 0) {
+                int colon = line.indexOf(':');
+                if (colon > 0 && "Content-Range".equalsIgnoreCase(line.substring(0, colon).trim())) {
+                    r = parseContentRange(line.substring(colon + 1));
+                }
+            }
+            if (line == null) {
+                throw new EOFException("Unexpected end of multipart body");
+            }
+            if (r == null) {
+                throw new IOException("Missing Content-Range in multipart body");
+            }
+            readPart(in, r, offsets, buffers, offs, lengths, counts);
+            do {
+                line = readLine(in);
+                if (line == null) {
+                    throw new EOFException("Unexpected end of multipart body");
+                }
+            } while (!line.startsWith(delimiter));
+        }
+    }
+
+    /**
+     * Copy one part of response to all requested ranges which intersect it.
+     * @param r first, last and total as returned by parseContentRange
+     */
+    void readPart(InputStream in, long[] r, long[] offsets, byte[][] buffers, int[] offs, int[] lengths, int[] counts) throws IOException {
+        if (r[2] >= 0) {
+            length = r[2];
+        }
+        long pos = r[0];
+        long end = r[1] + 1;
+        for (int i = 0; i < offsets.length && pos < end; i++) {
+            long start = Math.max(offsets[i], pos);
+            long stop = Math.min(offsets[i] + lengths[i], end);
+            if (start >= stop) {
+                continue;
+            }
+            skipFully(in, start - pos);
+            int destPos = (int) (start - offsets[i]);
+            int n = (int) (stop - start);
+            readFully(in, buffers[i], offs[i] + destPos, n);
+            counts[i] = Math.max(counts[i], destPos + n);
+            pos = stop;
+        }
+        skipFully(in, end - pos);
+    }
+
+    static void readFully(InputStream in, byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = in.read(b, off, len);
+            if (n < 0) {
+                throw new EOFException();
+            }
+            off += n;
+            len -= n;
+        }
+    }
+
+    static void skipFully(InputStream in, long n) throws IOException {
+        while (n > 0) {
+            long k = in.skip(n);
+            if (k <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException();
+                }
+                k = 1;
+            }
+            n -= k;
+        }
+    }
+
+    static void skipRest(InputStream in) throws IOException {
+        byte[] b = new byte[512];
+        while (in.read(b) >= 0) {
+        }
+    }
+
+    static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read()) >= 0) {
+            if (c == '\n') {
+                int k = sb.length();
+                if (k > 0 && sb.charAt(k - 1) == '\r') {
+                    sb.setLength(k - 1);
+                }
+                return sb.toString();
+            }
+            sb.append((char) c);
+        }
+        return sb.length() > 0 ? sb.toString() : null;
+    }
+
+    static String getBoundary(String contentType) {
+        if (contentType == null || !contentType.toLowerCase().startsWith("multipart/byteranges")) {
+            return null;
+        }
+        int k = contentType.toLowerCase().indexOf("boundary=");
+        if (k < 0) {
+            return null;
+        }
+        String boundary = contentType.substring(k + 9);
+        int semicolon = boundary.indexOf(';');
+        if (semicolon >= 0) {
+            boundary = boundary.substring(0, semicolon);
+        }
+        boundary = boundary.trim();
+        if (boundary.length() > 1 && boundary.charAt(0) == '"' && boundary.endsWith("\"")) {
+            boundary = boundary.substring(1, boundary.length() - 1);
+        }
+        return boundary;
+    }
+
+    /**
+     * Parse Content-Range header value ("bytes first-last/total" or "bytes &#42;/total").
+     * @return array {first, last, total} (unknown values are -1) or null
+     */
+    static long[] parseContentRange(String s) {
+        if (s == null) {
+            return null;
+        }
+        s = s.trim();
+        if (s.regionMatches(true, 0, "bytes", 0, 5)) {
+            s = s.substring(5).trim();
+        }
+        int slash = s.indexOf('/');
+        if (slash < 0) {
+            return null;
+        }
+        try {
+            String range = s.substring(0, slash).trim();
+            String total = s.substring(slash + 1).trim();
+            long[] r = {-1, -1, -1};
+            if (!"*".equals(total)) {
+                r[2] = Long.parseLong(total);
+            }
+            if (!"*".equals(range)) {
+                int dash = range.indexOf('-');
+                if (dash < 0) {
+                    return null;
+                }
+                r[0] = Long.parseLong(range.substring(0, dash).trim());
+                r[1] = Long.parseLong(range.substring(dash + 1).trim());
+            }
+            return r;
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Thrown if server sends whole resource instead of requested ranges.
+     * Response body is not consumed and may be used as stream.
+     */
+    public static class RangesNotSupportedException extends IOException {
+        final transient InputStream body;
+        final long contentLength;
+
+        private static final long serialVersionUID = 1L;
+
+        public RangesNotSupportedException(InputStream body, long contentLength) {
+            super("byteserving not supported by server");
+            this.body = body;
+            this.contentLength = contentLength;
+        }
+
+        /**
+         * @return response body (whole resource)
+         */
+        public InputStream getBody() {
+            return body;
+        }
+
+        /**
+         * @return length of resource or -1 if not known
+         */
+        public long getContentLength() {
+            return contentLength;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) Andrey Kuznetsov. All Rights Reserved.
+ *
+ * http://uio.imagero.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  o Neither the name of Andrey Kuznetsov nor the names of
+ *    its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.imagero.uio.bio.content;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.imagero.uio.impl.RandomAccessFileX;
+import com.imagero.uio.io.IOutils;
+
+/**
+ * StreamContent which serves data from memory mapped regions of a file.
+ * File is mapped in windows of fixed size, every window is mapped only once
+ * and then shared by all loads, so loading of chunk is just a copy from page cache
+ * (no seek and read calls).
+ * Mapped regions are released by garbage collector after content was closed.
+ */
+public class MappedFileContent extends StreamContent {
+
+    public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private String mode;
+    private final int windowSize;
+    private MappedByteBuffer[] windows = new MappedByteBuffer[0];
+    private boolean closed;
+
+    public MappedFileContent(File f) throws IOException {
+        this(f, RandomAccessFileContent.getMode(f));
+    }
+
+    public MappedFileContent(File f, String mode) throws IOException {
+        this(new RandomAccessFileX(f, mode), DEFAULT_WINDOW_SIZE);
+    }
+
+    public MappedFileContent(File f, String mode, int windowSize) throws IOException {
+        this(new RandomAccessFileX(f, mode), windowSize);
+    }
+
+    /**
+     * @param raf RandomAccessFile (should be RandomAccessFileX, otherwise content is read only)
+     * @param windowSize size of mapped regions
+     */
+    public MappedFileContent(RandomAccessFile raf, int windowSize) {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("" + windowSize);
+        }
+        this.raf = raf;
+        this.channel = raf.getChannel();
+        this.windowSize = windowSize;
+        if (raf instanceof RandomAccessFileX) {
+            this.mode = ((RandomAccessFileX) raf).getMode();
+        } else {
+            this.mode = "r";
+        }
+    }
+
+    public int load(long offset, int bpos, byte[] b) throws IOException {
+        long length = channel.size();
+        long max = length - offset;
+        int len = (int) Math.min(max, b.length - bpos);
+        if (len <= 0) {
+            throw new EOFException();
+        }
+        int copied = 0;
+        while (copied < len) {
+            long pos = offset + copied;
+            ByteBuffer src = getWindow((int) (pos / windowSize), length).duplicate();
+            src.position((int) (pos % windowSize));
+            int toCopy = Math.min(len - copied, src.remaining());
+            src.get(b, bpos + copied, toCopy);
+            copied += toCopy;
+        }
+        return len;
+    }
+
+    /**
+     * get mapped window with given index.
+     * Window is (re)mapped if it was not mapped yet or if file grew since last mapping.
+     * @param index window index
+     * @param length current file length
+     */
+    private synchronized MappedByteBuffer getWindow(int index, long length) throws IOException {
+        if (index >= windows.length) {
+            MappedByteBuffer[] tmp = new MappedByteBuffer[index + 1];
+            System.arraycopy(windows, 0, tmp, 0, windows.length);
+            windows = tmp;
+        }
+        long start = (long) index * windowSize;
+        int size = (int) Math.min(windowSize, length - start);
+        MappedByteBuffer window = windows[index];
+        if (window == null || window.capacity() < size) {
+            FileChannel.MapMode mapMode = writable() ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+            window = channel.map(mapMode, start, size);
+            windows[index] = window;
+        }
+        return window;
+    }
+
+    public int load(long offset, ByteBuffer buffer) throws IOException {
+        long length = channel.size();
+        long max = length - offset;
+        int len = (int) Math.min(max, buffer.remaining());
+        if (len <= 0) {
+            throw new EOFException();
+        }
+        int copied = 0;
+        while (copied < len) {
+            long pos = offset + copied;
+            ByteBuffer src = getWindow((int) (pos / windowSize), length).duplicate();
+            src.position((int) (pos % windowSize));
+            int toCopy = Math.min(len - copied, src.remaining());
+            src.limit(src.position() + toCopy);
+            buffer.put(src);
+            copied += toCopy;
+        }
+        return len;
+    }
+
+    /**
+     * Get read only view of mapped data.
+     * @return ByteBuffer or null if requested region crosses window boundary
+     */
+    public ByteBuffer slice(long offset, int length) throws IOException {
+        long fileLength = channel.size();
+        int len = (int) Math.min(fileLength - offset, length);
+        if (len <= 0) {
+            throw new EOFException();
+        }
+        int index = (int) (offset / windowSize);
+        int wpos = (int) (offset % windowSize);
+        if (wpos + len > windowSize) {
+            return null;
+        }
+        ByteBuffer src = getWindow(index, fileLength).duplicate();
+        src.limit(wpos + len);
+        src.position(wpos);
+        return src.slice().asReadOnlyBuffer();
+    }
+
+    public void save(long offset, int bpos, byte[] buffer, int length) throws IOException {
+        if (!writable()) {
+            throw new IOException("Content is read only");
+        }
+        long fileLength = channel.size();
+        if (offset + length <= fileLength) {
+            int saved = 0;
+            while (saved < length) {
+                long pos = offset + saved;
+                ByteBuffer dest = getWindow((int) (pos / windowSize), fileLength).duplicate();
+                dest.position((int) (pos % windowSize));
+                int toCopy = Math.min(length - saved, dest.remaining());
+                dest.put(buffer, bpos + saved, toCopy);
+                saved += toCopy;
+            }
+        } else {
+            ByteBuffer src = ByteBuffer.wrap(buffer, bpos, length);
+            long pos = offset;
+            while (src.hasRemaining()) {
+                pos += channel.write(src, pos);
+            }
+        }
+    }
+
+    public long length() throws IOException {
+        return channel.size();
+    }
+
+    public boolean isPositional() {
+        return true;
+    }
+
+    public boolean canReload() {
+        return true;
+    }
+
+    public boolean writable() {
+        return "rw".equals(mode);
+    }
+
+    public synchronized void close() {
+        closed = true;
+        windows = new MappedByteBuffer[0];
+        IOutils.closeStream(raf);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    protected void finalize() throws Throwable {
+        super.finalize();
+        raf = null;
+        channel = null;
+    }
+}
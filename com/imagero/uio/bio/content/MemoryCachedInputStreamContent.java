@@ -31,249 +31,363 @@
  */
 package com.imagero.uio.bio.content;
 
-import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Hashtable;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.imagero.uio.io.IOutils;
 
 /**
+ * Caches InputStream data in chunks.
+ * <br>
+ * Chunks are kept in array indexed by chunk number, optionally off-heap (direct ByteBuffers).
+ * If memory limit is set, cold chunks (second chance / clock order) are spilled to a file.
+ * <br>
+ * Only one thread (producer) reads from InputStream at a time,
+ * already cached chunks are read without locking, so load() may be called concurrently.
+ * Producer may run ahead of readers on Executor (see setReadAhead).
  * Date: 05.01.2008
  * 
  * @author Andrey Kuznetsov
  */
 public class MemoryCachedInputStreamContent extends StreamContent {
 	InputStream in;
-	int chunkSize;
-	boolean finished;
+	final int chunkSize;
+	volatile boolean finished;
 
-	int overflow = 5;
-
-	Hashtable<Long, Chunk> ht = new Hashtable<Long, Chunk>();
+	/**
+	 * chunks which were read (last one may be shorter than chunkSize)
+	 */
+	volatile Chunk[] chunks = new Chunk[16];
+	volatile int readCount;
 
 	int lastChunkSize;
 
+	final Object producerLock = new Object();
+
+	final long maxMemory;
+	final boolean direct;
+	long memoryUsed;
+	final ArrayDeque<Chunk> resident = new ArrayDeque<Chunk>();
+
+	File spillFile;
+	boolean deleteSpillFile;
+	RandomAccessFile spillRaf;
+	volatile FileChannel spill;
+
+	int readAhead;
+	Executor executor;
+	final AtomicBoolean producing = new AtomicBoolean();
+	volatile IOException producerError;
+
+	volatile boolean closed;
+
+	byte[] scratch;
+
 	public MemoryCachedInputStreamContent(InputStream in, int chunkSize) {
+		this(in, chunkSize, Long.MAX_VALUE, false, null);
+	}
+
+	/**
+	 * @param in
+	 *            InputStream
+	 * @param chunkSize
+	 *            chunk size
+	 * @param maxMemory
+	 *            max amount of cached data kept in memory (at least one chunk)
+	 * @param direct
+	 *            if true chunks are kept in direct ByteBuffers (off-heap)
+	 * @param spillFile
+	 *            file for chunks which don't fit to memory (if null then
+	 *            temporary file is created when needed)
+	 */
+	public MemoryCachedInputStreamContent(InputStream in, int chunkSize, long maxMemory, boolean direct, File spillFile) {
 		this.in = in;
 		this.chunkSize = chunkSize;
+		this.maxMemory = Math.max(maxMemory, chunkSize);
+		this.direct = direct;
+		this.spillFile = spillFile;
+	}
+
+	/**
+	 * Let producer read <code>chunks</code> chunks ahead of readers on given
+	 * Executor.
+	 * 
+	 * @param chunks
+	 *            how much chunks to read ahead (0 - no read ahead)
+	 * @param executor
+	 *            Executor (if null then producer runs on reader thread)
+	 */
+	public void setReadAhead(int chunks, Executor executor) {
+		this.readAhead = Math.max(0, chunks);
+		this.executor = executor;
 	}
 
 	public int load(long offset, int destOffset, byte[] dest) throws IOException {
+		int count = 0;
+		int length = dest.length - destOffset;
 		long index = offset / chunkSize;
-		if (finished && index >= readCount) {
-			throw new EOFException();
-		}
-		if (!finished) {
-			for (long i = readCount; i <= index; i++) {
-				byte[] b = new byte[chunkSize];
-				Chunk chunk = addChunk(b, i); // first add then read
-				int length = b.length;
-				lastChunkSize = chunkSize;
-				length = IOutils.readFully(in, b);
-				if (chunk.src.length != length) {
-					if (length > 0) {
-						b = new byte[length];
-						System.arraycopy(chunk.src, 0, b, 0, length);
-						chunk.src = b;
-						lastChunkSize = length;
-					} else {
-						ht.remove(new Long(i));
-					}
-					finished = true;
+		int chunkOffset = (int) (offset % chunkSize);
+		while (count < length) {
+			if (index >= readCount) {
+				if (finished) {
 					break;
 				}
-			}
-		}
-		if (index <= readCount) {
-			return copyData(dest, destOffset, offset);
-		}
-		return 0;
-	}
-
-	protected void prepare() {
-		for (long i = readCount; !finished; i++) {
-			byte[] b = new byte[chunkSize];
-			Chunk chunk = addChunk(b, i); // first add then read
-			int length = b.length;
-			lastChunkSize = chunkSize;
-			length = IOutils.readFully(in, b);
-			if (chunk.src.length != length) {
-				if (length > 0) {
-					b = new byte[length];
-					System.arraycopy(chunk.src, 0, b, 0, length);
-					chunk.src = b;
-					lastChunkSize = length;
-				} else {
-					ht.remove(new Long(i));
+				produce(index);
+				if (index >= readCount) {
+					break;
 				}
-				finished = true;
+			}
+			Chunk c = chunks[(int) index];
+			int n = Math.min(length - count, c.length - chunkOffset);
+			if (n <= 0) {
 				break;
 			}
+			copy(c, chunkOffset, dest, destOffset + count, n);
+			count += n;
+			chunkOffset = 0;
+			index++;
 		}
+		readAhead(index);
+		return count;
 	}
 
-	private int copyData(byte[] dest, int destOffset, long streamOffset) {
-		long index = streamOffset / chunkSize;
-		Chunk chunk = ht.get(new Long(index));
-		if (chunk != null) {
-			return chunk.copyInterval(dest, destOffset, streamOffset);
+	void copy(Chunk c, int srcOffset, byte[] dest, int destOffset, int length) throws IOException {
+		c.referenced = true;
+		byte[] data = c.data;
+		if (data != null) {
+			System.arraycopy(data, srcOffset, dest, destOffset, length);
+			return;
+		}
+		ByteBuffer buffer = c.buffer;
+		if (buffer != null) {
+			ByteBuffer b = buffer.duplicate();
+			b.position(srcOffset);
+			b.get(dest, destOffset, length);
+			return;
+		}
+		// spilled (file is written before chunk data is released)
+		ByteBuffer dst = ByteBuffer.wrap(dest, destOffset, length);
+		long pos = (long) c.index * chunkSize + srcOffset;
+		FileChannel channel = spill;
+		if (channel == null) {
+			throw new IOException("Content closed");
+		}
+		while (dst.hasRemaining()) {
+			int n = channel.read(dst, pos);
+			if (n < 0) {
+				throw new IOException("Spill file truncated");
+			}
+			pos += n;
 		}
-		return 0;
 	}
 
-	public void close() {
+	private void readAhead(long index) {
+		if (readAhead == 0 || executor == null || finished || closed) {
+			return;
+		}
+		final long target = index + readAhead - 1;
+		if (target < readCount || !producing.compareAndSet(false, true)) {
+			return;
+		}
+		executor.execute(new Runnable() {
+			public void run() {
+				try {
+					produce(target);
+				} catch (IOException ex) {
+					producerError = ex;
+				} finally {
+					producing.set(false);
+				}
+			}
+		});
 	}
 
-	long readCount;
-
-	private Chunk addChunk(byte[] buf, long index) {
-		long start = index * chunkSize;
-		Chunk helper = new Chunk(buf, index, start);
-		readCount++;
-		ht.put(new Long(index), helper);
-		return helper;
+	/**
+	 * Read chunks from InputStream (up to chunk with given index).
+	 */
+	void produce(long target) throws IOException {
+		synchronized (producerLock) {
+			IOException ex = producerError;
+			if (ex != null) {
+				throw ex;
+			}
+			while (!finished && !closed && readCount <= target) {
+				readChunk();
+			}
+		}
 	}
 
-	class Chunk {
-		byte[] src;
-		long index;
-
-		long start;
-
-		private Chunk parent;
-
-		private Chunk left;
-		private Chunk right;
-
-		public Chunk(byte[] buf, long index, long start) {
-			this.src = buf;
-			this.index = index;
-			this.start = start;
+	private void readChunk() throws IOException {
+		if (scratch == null) {
+			scratch = new byte[chunkSize];
 		}
-
-		/**
-		 * 
-		 * @param dest
-		 *            destination array
-		 * @param destOffset
-		 *            start offset in destination array
-		 * @param absOffset
-		 *            absolute offset in stream
-		 * @return how much bytes was copied
-		 */
-		int copyInterval(byte[] dest, int destOffset, long absOffset) {
-			if (src != null) {
-				if ((start > absOffset) || (absOffset > start + src.length)) {
-					throw new IndexOutOfBoundsException("Given offset is out of chunk bounds");
-				}
-				if (destOffset < 0 || destOffset > dest.length) {
-					throw new IndexOutOfBoundsException("Illegal destination offset: " + destOffset);
-				}
-				int srcOffset = (int) (absOffset - start);
-				int length = Math.min(dest.length - destOffset, src.length - srcOffset);
-				System.arraycopy(src, srcOffset, dest, destOffset, length);
-				if (srcOffset == 0 && length == src.length) {
-					free();
-				} else {
-					if (srcOffset == 0) {
-						// right part leftover
-						byte[] buf = new byte[src.length - length];
-						System.arraycopy(src, length, buf, 0, buf.length);
-						src = buf;
-					} else if (srcOffset + length == src.length) {
-						// left part leftover
-						byte[] buf = new byte[src.length - length];
-						System.arraycopy(src, 0, buf, 0, buf.length);
-						src = buf;
-					} else {
-						byte[] leftBuf = new byte[srcOffset];
-						System.arraycopy(src, 0, leftBuf, 0, leftBuf.length);
-						left = new Chunk(leftBuf, -1, start);
-						left.parent = this;
-
-						byte[] rightBuf = new byte[src.length - (srcOffset + length)];
-						System.arraycopy(src, srcOffset + length, rightBuf, 0, rightBuf.length);
-						right = new Chunk(rightBuf, -1, start + srcOffset + length);
-						right.parent = this;
-
-						src = null;
-					}
-				}
-				return length;
+		int length = 0;
+		while (length < chunkSize) {
+			int n = in.read(scratch, length, chunkSize - length);
+			if (n < 0) {
+				break;
+			}
+			length += n;
+		}
+		if (length > 0) {
+			Chunk c = new Chunk(readCount, length);
+			if (direct) {
+				ByteBuffer b = ByteBuffer.allocateDirect(length);
+				b.put(scratch, 0, length);
+				b.clear();
+				c.buffer = b;
+			} else if (length == chunkSize) {
+				c.data = scratch;
+				scratch = null;
+			} else {
+				byte[] data = new byte[length];
+				System.arraycopy(scratch, 0, data, 0, length);
+				c.data = data;
 			}
-			Chunk chunk = getChild(absOffset);
-			if (chunk != null) {
-				return chunk.copyInterval(dest, destOffset, absOffset);
+			Chunk[] cs = chunks;
+			if (readCount == cs.length) {
+				Chunk[] tmp = new Chunk[cs.length * 2];
+				System.arraycopy(cs, 0, tmp, 0, cs.length);
+				cs = tmp;
 			}
-			return 0;
+			cs[readCount] = c;
+			chunks = cs;
+			lastChunkSize = length;
+			memoryUsed += length;
+			resident.add(c);
+			readCount = readCount + 1;
+			spillColdChunks();
 		}
+		if (length < chunkSize) {
+			finished = true;
+			IOutils.closeStream(in);
+		}
+	}
 
-		private Chunk getChild(long absOffset) {
-			if (right.start <= absOffset) {
-				if (right.src != null) {
-					return right;
-				}
-				return right.getChild(absOffset);
-			} else if (left.start <= absOffset) {
-				if (left.src != null) {
-					return left;
-				}
-				return left.getChild(absOffset);
+	/**
+	 * Spill chunks to file until memory limit is satisfied. Chunks which
+	 * were accessed since last check get second chance.
+	 */
+	private void spillColdChunks() throws IOException {
+		int chances = resident.size();
+		while (memoryUsed > maxMemory && resident.size() > 1) {
+			Chunk c = resident.poll();
+			if (c.referenced && chances-- > 0) {
+				c.referenced = false;
+				resident.add(c);
+				continue;
 			}
-			return null;
+			spill(c);
 		}
+	}
 
-		private void free() {
-			if (parent != null) {
-				parent.removeChild(this);
-			} else {
-				ht.remove(new Long(index));
+	private void spill(Chunk c) throws IOException {
+		if (spill == null) {
+			if (spillFile == null) {
+				spillFile = File.createTempFile("mcc", null);
+				deleteSpillFile = true;
 			}
+			spillRaf = new RandomAccessFile(spillFile, "rw");
+			spill = spillRaf.getChannel();
+		}
+		ByteBuffer src;
+		if (c.data != null) {
+			src = ByteBuffer.wrap(c.data, 0, c.length);
+		} else {
+			src = c.buffer.duplicate();
 		}
+		long pos = (long) c.index * chunkSize;
+		while (src.hasRemaining()) {
+			pos += spill.write(src, pos);
+		}
+		c.data = null;
+		c.buffer = null;
+		memoryUsed -= c.length;
+	}
 
-		private void removeChild(Chunk c) {
-			if (c == null || c.parent != this) {
-				return;
-			}
-			if (c == left) {
-				left = null;
-			} else if (c == right) {
-				right = null;
-			} else {
-				return;
-			}
+	protected void prepare() throws IOException {
+		produce(Integer.MAX_VALUE);
+	}
 
-			if (left == null && right == null) {
-				free();
-			} else {
-				if (left != null) {
-					connectChild(left);
-				} else if (right != null) {
-					connectChild(right);
+	public void close() {
+		closed = true;
+		synchronized (producerLock) {
+			IOutils.closeStream(in);
+			resident.clear();
+			chunks = new Chunk[0];
+			readCount = 0;
+			memoryUsed = 0;
+			FileChannel channel = spill;
+			spill = null;
+			if (channel != null) {
+				IOutils.closeStream(spillRaf);
+				if (deleteSpillFile) {
+					spillFile.delete();
 				}
 			}
 		}
+	}
+
+	/**
+	 * @return amount of cached data which is kept in memory
+	 */
+	public long getMemoryUsed() {
+		synchronized (producerLock) {
+			return memoryUsed;
+		}
+	}
+
+	static final class Chunk {
+		final int index;
+		final int length;
+		volatile byte[] data;
+		volatile ByteBuffer buffer;
+		volatile boolean referenced;
 
-		private void connectChild(Chunk c) {
-			src = c.src;
-			left = c.left;
-			right = c.right;
+		Chunk(int index, int length) {
+			this.index = index;
+			this.length = length;
 		}
 	}
 
+	/**
+	 * Chunks are kept (in memory or in spill file), so data may be reloaded.
+	 */
 	public boolean canReload() {
-		return false;
+		return true;
+	}
+
+	public boolean isPositional() {
+		return true;
+	}
+
+	public boolean isLengthKnown() {
+		return finished;
 	}
 
 	public void save(long offset, int bpos, byte[] buffer, int length) throws IOException {
 	}
 
+	/**
+	 * Stream length is known only after whole stream was read, so this method
+	 * reads (and caches) rest of stream.
+	 */
 	public long length() throws IOException {
 		if (!finished) {
 			prepare();
 		}
-		return (readCount - 1) * chunkSize + lastChunkSize;
+		int count = readCount;
+		if (count == 0) {
+			return 0;
+		}
+		return (long) (count - 1) * chunkSize + lastChunkSize;
 	}
 
 	public boolean writable() {
@@ -282,7 +396,7 @@ public class MemoryCachedInputStreamContent extends StreamContent {
 
 	@Override
 	public boolean isOpen() {
-		return true;
+		return !closed;
 	}
 
 }
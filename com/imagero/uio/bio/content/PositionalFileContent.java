@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) Andrey Kuznetsov. All Rights Reserved.
+ *
+ * http://uio.imagero.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  o Neither the name of Andrey Kuznetsov nor the names of
+ *    its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.imagero.uio.bio.content;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.imagero.uio.impl.RandomAccessFileX;
+import com.imagero.uio.io.IOutils;
+
+/**
+ * StreamContent which reads and writes file with positional FileChannel methods
+ * (pread/pwrite), so chunks may be loaded from different threads at the same time
+ * without synchronization.
+ * File is always opened by content itself and never shared with caller:
+ * if thread is interrupted during I/O, then FileChannel (and so this content) is closed,
+ * but file handles of caller are not affected.
+ * Use RandomAccessFileContent if content may be used by threads which are interrupted.
+ */
+public class PositionalFileContent extends StreamContent {
+
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private String mode;
+    private boolean closed;
+
+    public PositionalFileContent(File f) throws IOException {
+        this(f, RandomAccessFileContent.getMode(f));
+    }
+
+    public PositionalFileContent(File f, String mode) throws IOException {
+        this.raf = new RandomAccessFileX(f, mode);
+        this.channel = raf.getChannel();
+        this.mode = mode;
+    }
+
+    public int load(long offset, int bpos, byte[] b) throws IOException {
+        return load(offset, ByteBuffer.wrap(b, bpos, b.length - bpos));
+    }
+
+    public int load(long offset, ByteBuffer buffer) throws IOException {
+        long max = channel.size() - offset;
+        int len = (int) Math.min(max, buffer.remaining());
+        if (len <= 0) {
+            throw new EOFException();
+        }
+        ByteBuffer dst = buffer.duplicate();
+        dst.limit(dst.position() + len);
+        long pos = offset;
+        while (dst.hasRemaining()) {
+            int read = channel.read(dst, pos);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            pos += read;
+        }
+        buffer.position(dst.position());
+        return len;
+    }
+
+    public void save(long offset, int bpos, byte[] buffer, int length) throws IOException {
+        save(offset, ByteBuffer.wrap(buffer, bpos, length));
+    }
+
+    public void save(long offset, ByteBuffer buffer) throws IOException {
+        if (!writable()) {
+            throw new IOException("Content is read only");
+        }
+        long pos = offset;
+        while (buffer.hasRemaining()) {
+            pos += channel.write(buffer, pos);
+        }
+    }
+
+    public long length() throws IOException {
+        return channel.size();
+    }
+
+    public boolean isPositional() {
+        return true;
+    }
+
+    public boolean canReload() {
+        return true;
+    }
+
+    public boolean writable() {
+        return "rw".equals(mode);
+    }
+
+    public void close() {
+        closed = true;
+        IOutils.closeStream(raf);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed && channel.isOpen();
+    }
+}
@@ -35,6 +35,7 @@ import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.util.logging.Logger;
 
 import com.imagero.uio.impl.RandomAccessFileX;
@@ -49,6 +50,7 @@ public class RandomAccessFileContent extends StreamContent {
     private RandomAccessFile raf;
     private String mode;
     private boolean closed;
+    private boolean ownsFile = true;
 
     public RandomAccessFileContent(File f) throws IOException {
         this(f, getMode(f));
@@ -75,8 +77,21 @@ public class RandomAccessFileContent extends StreamContent {
         }
     }
 
+    /**
+     * @param raf RandomAccessFile
+     * @param ownsFile if false then close() doesn't close file
+     * (e.g. file is shared with its owner which closes it itself)
+     * and file pointer of owner is not changed by load and save
+     */
+    public RandomAccessFileContent(RandomAccessFile raf, boolean ownsFile) {
+        this(raf);
+        this.ownsFile = ownsFile;
+    }
+
     private synchronized void testWrite() {
+        long fp = 0;
         try {
+            fp = raf.getFilePointer();
             raf.seek(0);
             int a = raf.read();
             raf.write(a);
@@ -88,7 +103,7 @@ public class RandomAccessFileContent extends StreamContent {
         }
         finally {
             try {
-                raf.seek(0);
+                raf.seek(fp);
             }
             catch (IOException ex) {
                 Logger.getLogger(getClass().getName()).warning(ex.getMessage());
@@ -100,21 +115,88 @@ public class RandomAccessFileContent extends StreamContent {
         long max = raf.length() - offset;
         int len = (int) Math.min(max, b.length - bpos);
         if (len > 0) {
-            raf.seek(offset);
-            raf.readFully(b, bpos, len);
+            read(offset, b, bpos, len);
             return len;
         }
         throw new EOFException();
 //            return 0;
     }
 
+    public int load(long offset, ByteBuffer buffer) throws IOException {
+        if (!buffer.hasArray()) {
+            return super.load(offset, buffer);
+        }
+        int pos = buffer.position();
+        long max = raf.length() - offset;
+        int len = (int) Math.min(max, buffer.remaining());
+        if (len > 0) {
+            read(offset, buffer.array(), buffer.arrayOffset() + pos, len);
+            buffer.position(pos + len);
+            return len;
+        }
+        throw new EOFException();
+    }
+
+    public void save(long offset, ByteBuffer buffer) throws IOException {
+        if (!buffer.hasArray()) {
+            super.save(offset, buffer);
+            return;
+        }
+        int pos = buffer.position();
+        int len = buffer.remaining();
+        write(offset, buffer.array(), buffer.arrayOffset() + pos, len);
+        buffer.position(pos + len);
+    }
+
+    /**
+     * If file is shared with its owner, then file pointer of owner is restored after reading
+     * and access is synchronized on file, so children of owner may load data from different threads.
+     */
+    private void read(long offset, byte[] b, int off, int len) throws IOException {
+        if (ownsFile) {
+            raf.seek(offset);
+            raf.readFully(b, off, len);
+            return;
+        }
+        synchronized (raf) {
+            long fp = raf.getFilePointer();
+            try {
+                raf.seek(offset);
+                raf.readFully(b, off, len);
+            }
+            finally {
+                raf.seek(fp);
+            }
+        }
+    }
+
+    private void write(long offset, byte[] b, int off, int len) throws IOException {
+        if (ownsFile) {
+            raf.seek(offset);
+            raf.write(b, off, len);
+            return;
+        }
+        synchronized (raf) {
+            long fp = raf.getFilePointer();
+            try {
+                raf.seek(offset);
+                raf.write(b, off, len);
+            }
+            finally {
+                raf.seek(fp);
+            }
+        }
+    }
+
     public boolean canReload() {
         return true;
     }
 
     public void close() {
-    	closed = true;
-        IOutils.closeStream(raf);
+        if (ownsFile) {
+            closed = true;
+            IOutils.closeStream(raf);
+        }
     }
 
     public boolean writable() {
@@ -122,9 +204,8 @@ public class RandomAccessFileContent extends StreamContent {
     }
 
     public void save(long offset, int bpos, byte[] buffer, int length) throws IOException {
-        raf.seek(offset);
         try {
-            raf.write(buffer, bpos, length);
+            write(offset, buffer, bpos, length);
         }
         catch (IndexOutOfBoundsException ex) {
             Logger.getLogger(getClass().getName()).warning(ex.getMessage());
@@ -142,7 +223,7 @@ public class RandomAccessFileContent extends StreamContent {
     
 	@Override
 	public boolean isOpen() {
-		return !closed;
+		return !closed && raf.getChannel().isOpen();
 	}
 
 }
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) Andrey Kuznetsov. All Rights Reserved.
+ *
+ * http://uio.imagero.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  o Neither the name of Andrey Kuznetsov nor the names of
+ *    its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.imagero.uio.bio.content;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Sorted set of non-overlapping intervals [start, end).
+ * Adjacent and overlapping intervals are merged on insertion.
+ * Lookup and insertion take O(log n) (plus number of merged intervals).
+ * <br>
+ * Used to track which parts of stream are already cached.
+ */
+public class RangeIndex {
+
+    /**
+     * start -&gt; end (exclusive)
+     */
+    final TreeMap<Long, Long> map = new TreeMap<Long, Long>();
+
+    /**
+     * Determine if interval [start, end) is completely covered.
+     */
+    public boolean contains(long start, long end) {
+        if (end <= start) {
+            return true;
+        }
+        Map.Entry<Long, Long> e = map.floorEntry(Long.valueOf(start));
+        return e != null && e.getValue().longValue() >= end;
+    }
+
+    /**
+     * Determine how much bytes starting at <code>start</code> are covered.
+     */
+    public long coveredLength(long start) {
+        Map.Entry<Long, Long> e = map.floorEntry(Long.valueOf(start));
+        if (e == null) {
+            return 0;
+        }
+        return Math.max(0, e.getValue().longValue() - start);
+    }
+
+    /**
+     * Add interval [start, end), merge it with overlapping and adjacent intervals.
+     */
+    public void add(long start, long end) {
+        if (end <= start) {
+            return;
+        }
+        Map.Entry<Long, Long> e = map.floorEntry(Long.valueOf(start));
+        if (e != null && e.getValue().longValue() >= start) {
+            if (e.getValue().longValue() >= end) {
+                return;
+            }
+            start = e.getKey().longValue();
+        }
+        Iterator<Map.Entry<Long, Long>> it = map.tailMap(Long.valueOf(start), true).entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Long> next = it.next();
+            if (next.getKey().longValue() > end) {
+                break;
+            }
+            end = Math.max(end, next.getValue().longValue());
+            it.remove();
+        }
+        map.put(Long.valueOf(start), Long.valueOf(end));
+    }
+
+    /**
+     * Find parts of interval [start, end) which are not covered.
+     * @return array of start/end pairs (empty if whole interval is covered)
+     */
+    public long[] missing(long start, long end) {
+        long[] res = new long[8];
+        int count = 0;
+        long pos = start;
+        Map.Entry<Long, Long> e = map.floorEntry(Long.valueOf(start));
+        if (e != null && e.getValue().longValue() > pos) {
+            pos = e.getValue().longValue();
+        }
+        Iterator<Map.Entry<Long, Long>> it = map.tailMap(Long.valueOf(start), false).entrySet().iterator();
+        while (pos < end) {
+            long gapEnd = end;
+            long nextEnd = end;
+            if (it.hasNext()) {
+                Map.Entry<Long, Long> next = it.next();
+                gapEnd = Math.min(end, next.getKey().longValue());
+                nextEnd = next.getValue().longValue();
+            }
+            if (gapEnd > pos) {
+                if (count == res.length) {
+                    long[] tmp = new long[res.length * 2];
+                    System.arraycopy(res, 0, tmp, 0, count);
+                    res = tmp;
+                }
+                res[count++] = pos;
+                res[count++] = gapEnd;
+            }
+            pos = Math.max(pos, nextEnd);
+        }
+        long[] r = new long[count];
+        System.arraycopy(res, 0, r, 0, count);
+        return r;
+    }
+
+    /**
+     * @return end of last interval (0 if index is empty)
+     */
+    public long getEnd() {
+        return map.isEmpty() ? 0 : map.lastEntry().getValue().longValue();
+    }
+
+    /**
+     * @return number of intervals
+     */
+    public int size() {
+        return map.size();
+    }
+
+    public void clear() {
+        map.clear();
+    }
+
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(map.size());
+        for (Map.Entry<Long, Long> e : map.entrySet()) {
+            out.writeLong(e.getKey().longValue());
+            out.writeLong(e.getValue().longValue());
+        }
+    }
+
+    public void read(DataInput in) throws IOException {
+        map.clear();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            long start = in.readLong();
+            long end = in.readLong();
+            add(start, end);
+        }
+    }
+}
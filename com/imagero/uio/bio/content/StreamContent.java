@@ -32,6 +32,7 @@
 package com.imagero.uio.bio.content;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  *
@@ -61,6 +62,48 @@ public abstract class StreamContent {
      */
     public abstract int load(long offset, int bpos, byte[] buffer) throws IOException;
 
+    /**
+     * Load stream content to specified ByteBuffer (from its position up to its limit).
+     * Position of ByteBuffer is advanced by number of loaded bytes.
+     * Default implementation loads data through temporary byte array,
+     * subclasses which are able to transfer data directly should override this method.
+     * @param offset stream offset
+     * @param buffer ByteBuffer
+     * @return how much bytes were loaded
+     * @throws java.io.IOException
+     */
+    public int load(long offset, ByteBuffer buffer) throws IOException {
+        byte[] tmp = new byte[buffer.remaining()];
+        int size = load(offset, 0, tmp);
+        buffer.put(tmp, 0, size);
+        return size;
+    }
+
+    /**
+     * Save ByteBuffer content (from its position up to its limit) to stream.
+     * Default implementation saves data through temporary byte array.
+     * @param offset stream offset
+     * @param buffer ByteBuffer
+     * @throws java.io.IOException
+     */
+    public void save(long offset, ByteBuffer buffer) throws IOException {
+        byte[] tmp = new byte[buffer.remaining()];
+        buffer.get(tmp);
+        save(offset, 0, tmp, tmp.length);
+    }
+
+    /**
+     * Get read only view of stream content without copying.
+     * Not always supported.
+     * @param offset stream offset
+     * @param length max length of view
+     * @return ByteBuffer or null if content can't provide views
+     * @throws java.io.IOException
+     */
+    public ByteBuffer slice(long offset, int length) throws IOException {
+        return null;
+    }
+
     /**
      * Save buffer content to stream.
      * Not always supported.
@@ -80,6 +123,16 @@ public abstract class StreamContent {
      */
     public abstract long length() throws IOException;
 
+    /**
+     * Determine if length is already known.
+     * If not (e.g. content reads InputStream), length() may have to read whole stream,
+     * so callers which don't really need exact length should not call it.
+     * @return true (default)
+     */
+    public boolean isLengthKnown() {
+        return true;
+    }
+
     /**
      * close stream
      */
@@ -97,6 +150,16 @@ public abstract class StreamContent {
 
     public abstract boolean writable();
 
+    /**
+     * Determine if load and save methods are positional (pread/pwrite style),
+     * i.e. they don't depend on shared file pointer and may be called from
+     * different threads at the same time without external synchronization.
+     * @return true if content may be accessed concurrently (default - false)
+     */
+    public boolean isPositional() {
+        return false;
+    }
+
     protected void finalize() throws Throwable {
         super.finalize();
         close();
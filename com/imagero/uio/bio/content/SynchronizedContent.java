@@ -32,6 +32,7 @@
 package com.imagero.uio.bio.content;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Date: 05.01.2008
@@ -54,10 +55,26 @@ public class SynchronizedContent extends StreamContent {
         content.save(offset, bpos, buffer, length);
     }
 
+    public synchronized int load(long offset, ByteBuffer buffer) throws IOException {
+        return content.load(offset, buffer);
+    }
+
+    public synchronized void save(long offset, ByteBuffer buffer) throws IOException {
+        content.save(offset, buffer);
+    }
+
+    public synchronized ByteBuffer slice(long offset, int length) throws IOException {
+        return content.slice(offset, length);
+    }
+
     public synchronized long length() throws IOException {
         return content.length();
     }
 
+    public boolean isLengthKnown() {
+        return content.isLengthKnown();
+    }
+
     public void close() {
         content.close();
     }
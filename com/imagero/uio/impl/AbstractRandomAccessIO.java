@@ -55,11 +55,39 @@ public abstract class AbstractRandomAccessIO extends AbstractRandomAccessInput i
         write(v);
     }
 
+    /**
+     * Fast path for multi-byte writes. Subclasses which keep data in memory may
+     * return how much bytes can be encoded directly with writeDirect(), without
+     * writing them one by one.
+     *
+     * @return count of bytes available for writeDirect() (default - 0)
+     */
+    protected int availableDirectWrite() {
+        return 0;
+    }
+
+    /**
+     * Encode 2, 4 or 8 low-order bytes of v directly into underlying data and
+     * advance stream position. Called only if availableDirectWrite() returned
+     * at least <code>size</code>. Default implementation writes bytes one by one,
+     * subclasses which override availableDirectWrite() should override it too.
+     */
+    protected void writeDirect(long v, int size, boolean bigEndian) throws IOException {
+        for (int i = 0; i < size; i++) {
+            int shift = bigEndian ? (size - 1 - i) * 8 : i * 8;
+            write((int) (v >>> shift) & 0xFF);
+        }
+    }
+
     public final void writeShort(int v) throws IOException {
         writeShort(v, byteOrder);
     }
 
     public final void writeShort(int v, int byteOrder) throws IOException {
+        if (availableDirectWrite() >= 2) {
+            writeDirect(v, 2, byteOrder == Endian.BIG_ENDIAN);
+            return;
+        }
         if (byteOrder == Endian.BIG_ENDIAN) {
             write((v >> 8) & 0xFF);
             write(v & 0xFF);
@@ -74,13 +102,7 @@ public abstract class AbstractRandomAccessIO extends AbstractRandomAccessInput i
     }
 
     public final void writeChar(int v, int byteOrder) throws IOException {
-        if (byteOrder == Endian.BIG_ENDIAN) {
-            write((v >> 8) & 0xFF);
-            write(v & 0xFF);
-        } else {
-            write(v & 0xFF);
-            write((v >> 8) & 0xFF);
-        }
+        writeShort(v, byteOrder);
     }
 
     public final void writeInt(int v) throws IOException {
@@ -88,6 +110,10 @@ public abstract class AbstractRandomAccessIO extends AbstractRandomAccessInput i
     }
 
     public final void writeInt(int v, int byteOrder) throws IOException {
+        if (availableDirectWrite() >= 4) {
+            writeDirect(v, 4, byteOrder == Endian.BIG_ENDIAN);
+            return;
+        }
         if (byteOrder == Endian.BIG_ENDIAN) {
             write((v >> 24) & 0xFF);
             write((v >> 16) & 0xFF);
@@ -106,6 +132,10 @@ public abstract class AbstractRandomAccessIO extends AbstractRandomAccessInput i
     }
 
     public final void writeLong(long v, int byteOrder) throws IOException {
+        if (availableDirectWrite() >= 8) {
+            writeDirect(v, 8, byteOrder == Endian.BIG_ENDIAN);
+            return;
+        }
         if (byteOrder == Endian.BIG_ENDIAN) {
             write((int) ((v >> 56) & 0xFF));
             write((int) ((v >> 48) & 0xFF));
@@ -141,7 +171,7 @@ public abstract class AbstractRandomAccessIO extends AbstractRandomAccessInput i
     }
 
     public final void writeDouble(double d, int byteOrder) throws IOException {
-        writeLong(Double.doubleToLongBits(d));
+        writeLong(Double.doubleToLongBits(d), byteOrder);
     }
 
     public final void writeBytes(String s) throws IOException {
@@ -68,6 +68,41 @@ public abstract class AbstractRandomAccessInput extends InputStream implements R
 		return false;
 	}
 
+	/**
+	 * Fast path for multi-byte reads. Subclasses which keep data in memory may
+	 * return how much bytes can be decoded directly with readDirect(), without
+	 * reading them one by one.
+	 * 
+	 * @return count of bytes available for readDirect() (default - 0)
+	 */
+	protected int availableDirect() {
+		return 0;
+	}
+
+	/**
+	 * Decode value of 2, 4 or 8 bytes directly from underlying data and
+	 * advance stream position. Called only if availableDirect() returned at
+	 * least <code>size</code>. Default implementation reads bytes one by one,
+	 * subclasses which override availableDirect() should override it too.
+	 * 
+	 * @return value in low-order bits
+	 */
+	protected long readDirect(int size, boolean bigEndian) throws IOException {
+		long v = 0;
+		for (int i = 0; i < size; i++) {
+			int b = read();
+			if (b < 0) {
+				throw new EOFException();
+			}
+			if (bigEndian) {
+				v = (v << 8) | b;
+			} else {
+				v |= (long) b << (i * 8);
+			}
+		}
+		return v;
+	}
+
 	public final int read(byte[] b) throws IOException {
 		return read(b, 0, b.length);
 	}
@@ -101,6 +136,9 @@ public abstract class AbstractRandomAccessInput extends InputStream implements R
 	}
 
 	public final int readUnsignedShort(int byteOrder) throws IOException {
+		if (availableDirect() >= 2) {
+			return (int) readDirect(2, byteOrder == BIG_ENDIAN) & 0xFFFF;
+		}
 		int b0 = read();
 		int b1 = read();
 		if (b0 == -1 || b1 == -1) {
@@ -113,6 +151,9 @@ public abstract class AbstractRandomAccessInput extends InputStream implements R
 	}
 
 	public final short readShort(int byteOrder) throws IOException {
+		if (availableDirect() >= 2) {
+			return (short) readDirect(2, byteOrder == BIG_ENDIAN);
+		}
 		int b0 = read();
 		int b1 = read();
 		if (b0 == -1 || b1 == -1) {
@@ -129,6 +170,9 @@ public abstract class AbstractRandomAccessInput extends InputStream implements R
 	}
 
 	public final char readChar(int byteOrder) throws IOException {
+		if (availableDirect() >= 2) {
+			return (char) readDirect(2, byteOrder == BIG_ENDIAN);
+		}
 		int b0 = read();
 		int b1 = read();
 		if (b0 < 0 || b1 < 0) {
@@ -145,6 +189,9 @@ public abstract class AbstractRandomAccessInput extends InputStream implements R
 	}
 
 	public final int readInt(int byteOrder) throws IOException {
+		if (availableDirect() >= 4) {
+			return (int) readDirect(4, byteOrder == BIG_ENDIAN);
+		}
 		int a0 = read();
 		int a1 = read();
 		int a2 = read();
@@ -172,6 +219,9 @@ public abstract class AbstractRandomAccessInput extends InputStream implements R
 	}
 
 	public final long readLong(int byteOrder) throws IOException {
+		if (availableDirect() >= 8) {
+			return readDirect(8, byteOrder == BIG_ENDIAN);
+		}
 		long a0 = read();
 		long a1 = read();
 		long a2 = read();
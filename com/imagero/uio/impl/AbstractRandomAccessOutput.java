@@ -33,6 +33,8 @@ package com.imagero.uio.impl;
 
 import com.imagero.uio.RandomAccessOutput;
 import com.imagero.uio.RandomAccessInput;
+import com.imagero.uio.xform.XtoByteBE;
+import com.imagero.uio.xform.XtoByteLE;
 
 import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
@@ -58,112 +60,56 @@ public abstract class AbstractRandomAccessOutput extends OutputStream implements
         write(v);
     }
 
+    /**
+     * values are encoded here and written with single write() call
+     */
+    private final byte[] scratch = new byte[8];
+
     public final void writeShort(int v) throws IOException {
         writeShort(v, byteOrder);
     }
 
     public final void writeShort(int v, int byteOrder) throws IOException {
         if (byteOrder == BIG_ENDIAN) {
-            write((v >> 8) & 0xFF);
-            write(v & 0xFF);
+            XtoByteBE.shortToByteBE((short) v, scratch, 0);
         } else {
-            write(v & 0xFF);
-            write((v >> 8) & 0xFF);
+            XtoByteLE.shortToByteLE((short) v, scratch, 0);
         }
+        write(scratch, 0, 2);
     }
 
     public final void writeChar(int v) throws IOException {
-        if (byteOrder == BIG_ENDIAN) {
-            write((v >> 8) & 0xFF);
-            write(v & 0xFF);
-        } else {
-            write(v & 0xFF);
-            write((v >> 8) & 0xFF);
-        }
+        writeShort(v, byteOrder);
     }
 
     public final void writeChar(int v, int byteOrder) throws IOException {
-        if (byteOrder == BIG_ENDIAN) {
-            write((v >> 8) & 0xFF);
-            write(v & 0xFF);
-        } else {
-            write(v & 0xFF);
-            write((v >> 8) & 0xFF);
-        }
+        writeShort(v, byteOrder);
     }
 
     public final void writeInt(int v) throws IOException {
-        if (byteOrder == BIG_ENDIAN) {
-            write((v >> 24) & 0xFF);
-            write((v >> 16) & 0xFF);
-            write((v >> 8) & 0xFF);
-            write(v & 0xFF);
-        } else {
-            write(v & 0xFF);
-            write((v >>> 8) & 0xFF);
-            write((v >>> 16) & 0xFF);
-            write((v >>> 24) & 0xFF);
-        }
+        writeInt(v, byteOrder);
     }
 
     public final void writeInt(int v, int byteOrder) throws IOException {
         if (byteOrder == BIG_ENDIAN) {
-            write((v >> 24) & 0xFF);
-            write((v >> 16) & 0xFF);
-            write((v >> 8) & 0xFF);
-            write(v & 0xFF);
+            XtoByteBE.intToByte(v, scratch, 0);
         } else {
-            write(v & 0xFF);
-            write((v >>> 8) & 0xFF);
-            write((v >>> 16) & 0xFF);
-            write((v >>> 24) & 0xFF);
+            XtoByteLE.intToByte(v, scratch, 0);
         }
+        write(scratch, 0, 4);
     }
 
     public final void writeLong(long v) throws IOException {
-        if (byteOrder == BIG_ENDIAN) {
-            write((int) ((v >> 56) & 0xFF));
-            write((int) ((v >> 48) & 0xFF));
-            write((int) ((v >> 40) & 0xFF));
-            write((int) ((v >> 32) & 0xFF));
-            write((int) ((v >> 24) & 0xFF));
-            write((int) ((v >> 16) & 0xFF));
-            write((int) ((v >> 8) & 0xFF));
-            write((int) (v & 0xFF));
-        }
-        else {
-            write((int) v & 0xFF);
-            write((int) ((v >> 8) & 0xFF));
-            write((int) ((v >>> 16) & 0xFF));
-            write((int) ((v >>> 24) & 0xFF));
-            write((int) ((v >>> 32) & 0xFF));
-            write((int) ((v >>> 40) & 0xFF));
-            write((int) ((v >>> 48) & 0xFF));
-            write((int) ((v >>> 56) & 0xFF));
-        }
+        writeLong(v, byteOrder);
     }
 
     public final void writeLong(long v, int byteOrder) throws IOException {
         if (byteOrder == BIG_ENDIAN) {
-            write((int) ((v >> 56) & 0xFF));
-            write((int) ((v >> 48) & 0xFF));
-            write((int) ((v >> 40) & 0xFF));
-            write((int) ((v >> 32) & 0xFF));
-            write((int) ((v >> 24) & 0xFF));
-            write((int) ((v >> 16) & 0xFF));
-            write((int) ((v >> 8) & 0xFF));
-            write((int) (v & 0xFF));
-        }
-        else {
-            write((int) v & 0xFF);
-            write((int) ((v >> 8) & 0xFF));
-            write((int) ((v >>> 16) & 0xFF));
-            write((int) ((v >>> 24) & 0xFF));
-            write((int) ((v >>> 32) & 0xFF));
-            write((int) ((v >>> 40) & 0xFF));
-            write((int) ((v >>> 48) & 0xFF));
-            write((int) ((v >>> 56) & 0xFF));
+            XtoByteBE.longToByteBE(v, scratch, 0);
+        } else {
+            XtoByteLE.longToByteLE(v, scratch, 0);
         }
+        write(scratch, 0, 8);
     }
 
     public final void writeFloat(float v) throws IOException {
@@ -171,8 +117,7 @@ public abstract class AbstractRandomAccessOutput extends OutputStream implements
     }
 
     public final void writeFloat(float f, int byteOrder) throws IOException {
-        int i = Float.floatToIntBits(f);
-        writeInt(i);
+        writeInt(Float.floatToIntBits(f), byteOrder);
     }
 
     public final void writeDouble(double v) throws IOException {
@@ -180,8 +125,7 @@ public abstract class AbstractRandomAccessOutput extends OutputStream implements
     }
 
     public final void writeDouble(double d, int byteOrder) throws IOException {
-        long l = Double.doubleToLongBits(d);
-        writeLong(l);
+        writeLong(Double.doubleToLongBits(d), byteOrder);
     }
 
     public final void writeBytes(String s) throws IOException {
@@ -183,13 +183,21 @@ public class RandomAccessFileWrapper extends AbstractRandomAccessIO {
         in.readFully(b, off, len);
     }
 
-    public RandomAccessIO createIOChild(long offset, long length, int byteOrder, boolean syncPointer) throws IOException {
+    /**
+     * Controller shared by all children (created on first use, children may be created
+     * from different threads). Its content doesn't own the file, so closing of the last
+     * child doesn't close this stream.
+     */
+    private synchronized IOController getController(int chunkSize) {
         if (controller == null) {
-            StreamContent content = new RandomAccessFileContent(in);
-            controller = new IOController(UIOStreamBuilder.DEFAULT_CHUNK_SIZE, content);
-
+            StreamContent content = new RandomAccessFileContent(in, false);
+            controller = new IOController(chunkSize, content);
         }
-        BufferedRandomAccessIO rio = new BufferedRandomAccessIO(controller, offset, true);
+        return controller;
+    }
+
+    public RandomAccessIO createIOChild(long offset, long length, int byteOrder, boolean syncPointer) throws IOException {
+        BufferedRandomAccessIO rio = new BufferedRandomAccessIO(getController(UIOStreamBuilder.DEFAULT_CHUNK_SIZE), offset, true);
         rio.child = true;
         if(length > 0) {
             rio.setLength(length);
@@ -206,20 +214,12 @@ public class RandomAccessFileWrapper extends AbstractRandomAccessIO {
     }
 
     public InputStream createInputStream(long offset) {
-        if(controller == null) {
-            StreamContent bc = new RandomAccessFileContent(in);
-            controller = new IOController(UIOStreamBuilder.DEFAULT_CHUNK_SIZE, bc);
-        }
-        return new IOCInputStream(controller, offset);
+        return new IOCInputStream(getController(UIOStreamBuilder.DEFAULT_CHUNK_SIZE), offset);
     }
 
     public InputStream createInputStream(long offset, long length) {
-        if(controller == null) {
-            StreamContent bc = new RandomAccessFileContent(in);
-            int len = ((int) length) & Integer.MAX_VALUE;
-            controller = new IOController(Math.min(UIOStreamBuilder.DEFAULT_CHUNK_SIZE, len), bc);
-        }
-        return new IOCInputStream(controller, offset, length);
+        int len = ((int) length) & Integer.MAX_VALUE;
+        return new IOCInputStream(getController(Math.min(UIOStreamBuilder.DEFAULT_CHUNK_SIZE, len)), offset, length);
     }
 
     public long getChildPosition(InputStream child) {
@@ -246,11 +246,7 @@ public class RandomAccessFileWrapper extends AbstractRandomAccessIO {
     }
 
     public OutputStream createOutputStream(long offset) {
-        if (controller == null) {
-            StreamContent bc = new RandomAccessFileContent(in);
-            controller = new IOController(UIOStreamBuilder.DEFAULT_CHUNK_SIZE, bc);
-        }
-        return new IOCOutputStream(controller, offset);
+        return new IOCOutputStream(getController(UIOStreamBuilder.DEFAULT_CHUNK_SIZE), offset);
     }
 
 	@Override
@@ -260,7 +256,7 @@ public class RandomAccessFileWrapper extends AbstractRandomAccessIO {
 
 	@Override
 	public boolean isOpen() {
-		return controller.isOpen();
+		return in != null && in.getChannel().isOpen();
 	}
 
 	@Override
@@ -41,6 +41,28 @@ import java.io.InputStream;
  * @version $Revision: 1.2 $
  */
 public class ASCII85InputStream extends FilterInputStream {
+
+    private static final int SKIP = -1;
+    private static final int ZERO = -2;
+    private static final int END = -3;
+    private static final int INVALID = -4;
+
+    private static final int[] TABLE = new int[0x100];
+
+    static {
+        for (int i = 0; i < TABLE.length; i++) {
+            TABLE[i] = INVALID;
+        }
+        for (int i = '!'; i <= 'u'; i++) {
+            TABLE[i] = i - '!';
+        }
+        TABLE[0] = TABLE['\t'] = TABLE['\n'] = TABLE['\f'] = TABLE['\r'] = TABLE[' '] = SKIP;
+        TABLE['z'] = ZERO;
+        TABLE['~'] = TABLE['x'] = END;
+    }
+
+    private static final int BLOCK = 4096;
+
     private int index;
     private int n;
     private boolean eof;
@@ -48,6 +70,10 @@ public class ASCII85InputStream extends FilterInputStream {
     private byte[] ascii;
     private byte[] b;
 
+    /** current group */
+    private long tuple;
+    private int count;
+
     /**
      * Constructor.
      *
@@ -55,94 +81,135 @@ public class ASCII85InputStream extends FilterInputStream {
      */
     public ASCII85InputStream(InputStream is) {
         super(is);
-        ascii = new byte[5];
-        b = new byte[4];
     }
 
     /**
-     * This will read the next byte from the stream.
+     * Decode ASCII85 data. Whitespace is skipped, decoding stops at EOD marker.
      *
-     * @return The next byte read from the stream.
+     * @return number of bytes written to dst (at most len * 4)
      *
-     * @throws IOException If there is an error reading from the wrapped stream.
+     * @throws IOException if src contains invalid characters
      */
-    public final int read() throws IOException {
-        if (index >= n) {
-            if (eof) {
-                return -1;
+    public static int decode(byte[] src, int off, int len, byte[] dst, int dstOff) throws IOException {
+        ASCII85InputStream d = new ASCII85InputStream(null);
+        int k = d.decodeBlock(src, off, len, dst, dstOff);
+        return k + d.finish(dst, dstOff + k);
+    }
+
+    private int decodeBlock(byte[] src, int off, int len, byte[] dst, int dstOff) throws IOException {
+        final int[] t = TABLE;
+        int dp = dstOff;
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            if (count == 0 && end - i >= 5) {
+                int c0 = t[src[i] & 0xFF];
+                int c1 = t[src[i + 1] & 0xFF];
+                int c2 = t[src[i + 2] & 0xFF];
+                int c3 = t[src[i + 3] & 0xFF];
+                int c4 = t[src[i + 4] & 0xFF];
+                // all 5 characters are digits
+                if ((c0 | c1 | c2 | c3 | c4) >= 0) {
+                    int v = (int) ((((c0 * 85L + c1) * 85 + c2) * 85 + c3) * 85 + c4);
+                    dst[dp] = (byte) (v >>> 24);
+                    dst[dp + 1] = (byte) (v >>> 16);
+                    dst[dp + 2] = (byte) (v >>> 8);
+                    dst[dp + 3] = (byte) v;
+                    dp += 4;
+                    i += 4;
+                    continue;
+                }
             }
-            index = 0;
-            int k;
-            byte z;
-            do {
-                int zz = (byte) in.read();
-                if (zz == -1) {
-                    eof = true;
-                    return -1;
+            int c = t[src[i] & 0xFF];
+            if (c >= 0) {
+                tuple = tuple * 85 + c;
+                if (++count == 5) {
+                    int v = (int) tuple;
+                    dst[dp] = (byte) (v >>> 24);
+                    dst[dp + 1] = (byte) (v >>> 16);
+                    dst[dp + 2] = (byte) (v >>> 8);
+                    dst[dp + 3] = (byte) v;
+                    dp += 4;
+                    tuple = 0;
+                    count = 0;
                 }
-                z = (byte) zz;
             }
-            while (z == '\n' || z == '\r' || z == ' ');
-
-            if (z == '~' || z == 'x') {
+            else if (c == SKIP) {
+                continue;
+            }
+            else if (c == ZERO && count == 0) {
+                dst[dp] = dst[dp + 1] = dst[dp + 2] = dst[dp + 3] = 0;
+                dp += 4;
+            }
+            else if (c == END) {
                 eof = true;
-                ascii = b = null;
-                n = 0;
-                return -1;
+                break;
+            }
+            else {
+                eof = true;
+                throw new IOException("Invalid data in Ascii85 stream");
+            }
+        }
+        return dp - dstOff;
+    }
+
+    /**
+     * decode last partial group (missing characters are 'u')
+     */
+    private int finish(byte[] dst, int dstOff) {
+        int k = count;
+        if (k < 2) {
+            count = 0;
+            return 0;
+        }
+        long t = tuple;
+        for (int i = k; i < 5; i++) {
+            t = t * 85 + 84;
+        }
+        int v = (int) t;
+        for (int i = 0; i < k - 1; i++) {
+            dst[dstOff + i] = (byte) (v >>> (24 - 8 * i));
+        }
+        tuple = 0;
+        count = 0;
+        return k - 1;
+    }
+
+    private boolean fill() throws IOException {
+        if (b == null) {
+            ascii = new byte[BLOCK];
+            b = new byte[BLOCK * 4 + 4];
+        }
+        while (index >= n) {
+            if (eof) {
+                return false;
             }
-            else if (z == 'z') {
-                b[0] = b[1] = b[2] = b[3] = 0;
-                n = 4;
+            index = 0;
+            int r = in.read(ascii, 0, ascii.length);
+            if (r == -1) {
+                eof = true;
+                n = finish(b, 0);
             }
             else {
-                ascii[0] = z; // may be EOF here....
-                for (k = 1; k < 5; ++k) {
-                    do {
-                        int zz = (byte) in.read();
-                        if (zz == -1) {
-                            eof = true;
-                            return -1;
-                        }
-                        z = (byte) zz;
-                    }
-                    while (z == '\n' || z == '\r' || z == ' ');
-                    ascii[k] = z;
-                    if (z == '~' || z == 'x') {
-                        break;
-                    }
-                }
-                n = k - 1;
-                if (n == 0) {
-                    eof = true;
-                    ascii = null;
-                    b = null;
-                    return -1;
-                }
-                if (k < 5) {
-                    for (++k; k < 5; ++k) {
-                        ascii[k] = 0x21;
-                    }
-                    eof = true;
-                }
-                // decode stream
-                long t = 0;
-                for (k = 0; k < 5; ++k) {
-                    z = (byte) (ascii[k] - 0x21);
-                    if (z < 0 || z > 93) {
-                        n = 0;
-                        eof = true;
-                        ascii = null;
-                        b = null;
-                        throw new IOException("Invalid data in Ascii85 stream");
-                    }
-                    t = (t * 85L) + z;
-                }
-                for (k = 3; k >= 0; --k) {
-                    b[k] = (byte) (t & 0xFFL);
-                    t >>>= 8;
+                n = decodeBlock(ascii, 0, r, b, 0);
+                if (eof) {
+                    n += finish(b, n);
                 }
             }
         }
+        return true;
+    }
+
+    /**
+     * This will read the next byte from the stream.
+     *
+     * @return The next byte read from the stream.
+     *
+     * @throws IOException If there is an error reading from the wrapped stream.
+     */
+    public final int read() throws IOException {
+        if (index >= n && !fill()) {
+            return -1;
+        }
         return b[index++] & 0xFF;
     }
 
@@ -158,22 +225,16 @@ public class ASCII85InputStream extends FilterInputStream {
      * @throws IOException If there is an error reading data from the underlying stream.
      */
     public final int read(byte[] data, int offset, int len) throws IOException {
-        if (eof && index >= n) {
-            return -1;
+        if (len <= 0) {
+            return 0;
         }
-        for (int i = 0; i < len; i++) {
-            if (index < n) {
-                data[i + offset] = b[index++];
-            }
-            else {
-                int t = read();
-                if (t == -1) {
-                    return i;
-                }
-                data[i + offset] = (byte) t;
-            }
+        if (index >= n && !fill()) {
+            return -1;
         }
-        return len;
+        int k = Math.min(len, n - index);
+        System.arraycopy(b, index, data, offset, k);
+        index += k;
+        return k;
     }
 
     /**
@@ -185,6 +246,7 @@ public class ASCII85InputStream extends FilterInputStream {
         ascii = null;
         eof = true;
         b = null;
+        index = n = 0;
         super.close();
     }
 
@@ -198,26 +260,30 @@ public class ASCII85InputStream extends FilterInputStream {
     }
 
     /**
-     * Unsupported.
+     * Skip decoded bytes.
      *
-     * @param nValue ignored.
+     * @param nValue number of bytes to skip.
      *
-     * @return Always zero.
+     * @return number of bytes actually skipped.
      */
-    public long skip(long nValue) {
-        return 0;
+    public long skip(long nValue) throws IOException {
+        long skipped = 0;
+        while (skipped < nValue && (index < n || fill())) {
+            int k = (int) Math.min(nValue - skipped, n - index);
+            index += k;
+            skipped += k;
+        }
+        return skipped;
     }
 
     /**
-     * Unsupported.
-     *
-     * @return Always zero.
+     * @return number of decoded bytes in buffer, or 1 if buffer is empty and end of data is not reached.
      */
     public int available() {
-        if (eof) {
-            return 0;
+        if (index < n) {
+            return n - index;
         }
-	return 1;
+        return eof ? 0 : 1;
     }
 
     /**
@@ -32,20 +32,20 @@
 
 package com.imagero.uio.io;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Reader;
+import java.io.UnsupportedEncodingException;
 import java.io.Writer;
-import java.util.logging.Logger;
-
-import com.imagero.uio.bio.BIOFactory;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 
 /**
- * This class shows how simple and straightforward can be implementation of base
- * 64 codec using BitInputStream and BitOutputStream
+ * Table driven base 64 codec.
+ * Array and ByteBuffer methods encode and decode without line breaks,
+ * Base64OutputStream and Base64InputStream can be used for streaming.
  * 
  * @author Andrey Kuznetsov
  */
@@ -56,9 +56,13 @@ public class Base64 {
 			'j', 'k', 'l', 'm', 'n', 'o', 'p', 'q', 'r', 's', 't', 'u', 'v', 'w', 'x', 'y', 'z', '0', '1', '2', '3',
 			'4', '5', '6', '7', '8', '9', '+', '/' };
 
+	private static final byte[] encodeBytes = new byte[64];
+
 	static int decodeTable[] = new int[0x100];
 	static int lineLength = 72;
 
+	private static final int BLOCK = 3 * 1024;
+
 	public static int getLineLength() {
 		return lineLength;
 	}
@@ -73,10 +77,199 @@ public class Base64 {
 		}
 		for (int j = 0; j < encodeTable.length; j++) {
 			decodeTable[encodeTable[j]] = j;
+			encodeBytes[j] = (byte) encodeTable[j];
 		}
 	}
 
-	private static final char[] crlf = "\n".toCharArray();
+	/**
+	 * @return length of base 64 encoded data (with padding, without line breaks)
+	 */
+	public static int encodedLength(int len) {
+		return (len + 2) / 3 * 4;
+	}
+
+	/**
+	 * @return maximal length of data decoded from len base 64 characters
+	 */
+	public static int maxDecodedLength(int len) {
+		return len / 4 * 3 + 2;
+	}
+
+	/**
+	 * base 64 encode len bytes from src. Output is padded and has no line breaks.
+	 * 
+	 * @return number of bytes written to dst (always encodedLength(len))
+	 */
+	public static int encode(byte[] src, int off, int len, byte[] dst, int dstOff) {
+		final byte[] e = encodeBytes;
+		int sp = off;
+		int dp = dstOff;
+		int end = off + len - len % 3;
+		while (sp < end) {
+			int v = (src[sp] & 0xFF) << 16 | (src[sp + 1] & 0xFF) << 8 | (src[sp + 2] & 0xFF);
+			dst[dp] = e[v >>> 18];
+			dst[dp + 1] = e[(v >>> 12) & 0x3F];
+			dst[dp + 2] = e[(v >>> 6) & 0x3F];
+			dst[dp + 3] = e[v & 0x3F];
+			sp += 3;
+			dp += 4;
+		}
+		switch (len % 3) {
+		case 1: {
+			int v = src[sp] & 0xFF;
+			dst[dp++] = e[v >>> 2];
+			dst[dp++] = e[(v << 4) & 0x3F];
+			dst[dp++] = '=';
+			dst[dp++] = '=';
+			break;
+		}
+		case 2: {
+			int v = (src[sp] & 0xFF) << 8 | (src[sp + 1] & 0xFF);
+			dst[dp++] = e[v >>> 10];
+			dst[dp++] = e[(v >>> 4) & 0x3F];
+			dst[dp++] = e[(v << 2) & 0x3F];
+			dst[dp++] = '=';
+			break;
+		}
+		}
+		return dp - dstOff;
+	}
+
+	/**
+	 * base 64 encode all remaining bytes of src into dst. Positions of both buffers are advanced.
+	 * 
+	 * @return number of bytes written to dst
+	 * @throws BufferOverflowException
+	 *             if dst has not enough space
+	 */
+	public static int encode(ByteBuffer src, ByteBuffer dst) {
+		int len = src.remaining();
+		int n = encodedLength(len);
+		if (dst.remaining() < n) {
+			throw new BufferOverflowException();
+		}
+		if (src.hasArray() && dst.hasArray()) {
+			encode(src.array(), src.arrayOffset() + src.position(), len, dst.array(),
+					dst.arrayOffset() + dst.position());
+			src.position(src.limit());
+			dst.position(dst.position() + n);
+			return n;
+		}
+		byte[] in = new byte[Math.min(len, BLOCK)];
+		byte[] out = new byte[encodedLength(in.length)];
+		while (src.hasRemaining()) {
+			int k = Math.min(src.remaining(), in.length);
+			src.get(in, 0, k);
+			dst.put(out, 0, encode(in, 0, k, out, 0));
+		}
+		return n;
+	}
+
+	/**
+	 * decode base 64 characters. Characters which are not in base 64 alphabet
+	 * (e.g. line breaks) are skipped, decoding stops at first padding character.
+	 * 
+	 * @return number of bytes written to dst (at most maxDecodedLength(len))
+	 */
+	public static int decode(byte[] src, int off, int len, byte[] dst, int dstOff) {
+		final int[] d = decodeTable;
+		int sp = off;
+		int dp = dstOff;
+		int end = off + len;
+		int bits = 0;
+		int n = 0;
+		while (sp < end) {
+			if (n == 0 && end - sp >= 4) {
+				int v = d[src[sp] & 0xFF] << 18 | d[src[sp + 1] & 0xFF] << 12 | d[src[sp + 2] & 0xFF] << 6
+						| d[src[sp + 3] & 0xFF];
+				// negative if at least one character is not in alphabet
+				if (v >= 0) {
+					dst[dp] = (byte) (v >> 16);
+					dst[dp + 1] = (byte) (v >> 8);
+					dst[dp + 2] = (byte) v;
+					sp += 4;
+					dp += 3;
+					continue;
+				}
+			}
+			int c = src[sp++] & 0xFF;
+			if (c == '=') {
+				break;
+			}
+			int v = d[c];
+			if (v < 0) {
+				continue;
+			}
+			bits = (bits << 6) | v;
+			if (++n == 4) {
+				dst[dp++] = (byte) (bits >> 16);
+				dst[dp++] = (byte) (bits >> 8);
+				dst[dp++] = (byte) bits;
+				bits = 0;
+				n = 0;
+			}
+		}
+		if (n == 2) {
+			dst[dp++] = (byte) (bits >> 4);
+		} else if (n == 3) {
+			dst[dp++] = (byte) (bits >> 10);
+			dst[dp++] = (byte) (bits >> 2);
+		}
+		return dp - dstOff;
+	}
+
+	/**
+	 * decode all remaining base 64 characters of src into dst. Positions of both buffers are advanced.
+	 * 
+	 * @return number of bytes written to dst
+	 * @throws BufferOverflowException
+	 *             if dst has not enough space
+	 */
+	public static int decode(ByteBuffer src, ByteBuffer dst) {
+		int len = src.remaining();
+		byte[] in;
+		int inOff;
+		if (src.hasArray()) {
+			in = src.array();
+			inOff = src.arrayOffset() + src.position();
+		} else {
+			in = new byte[len];
+			inOff = 0;
+			src.duplicate().get(in);
+		}
+		int n;
+		if (dst.hasArray() && dst.remaining() >= maxDecodedLength(len)) {
+			n = decode(in, inOff, len, dst.array(), dst.arrayOffset() + dst.position());
+			dst.position(dst.position() + n);
+		} else {
+			byte[] out = new byte[maxDecodedLength(len)];
+			n = decode(in, inOff, len, out, 0);
+			dst.put(out, 0, n);
+		}
+		src.position(src.limit());
+		return n;
+	}
+
+	/**
+	 * copy characters from base 64 alphabet from src to dst and skip all other
+	 * characters.
+	 * 
+	 * @return number of copied characters or -(number + 1) if padding character
+	 *         was reached
+	 */
+	static int filter(byte[] src, int off, int len, byte[] dst, int dstOff) {
+		final int[] d = decodeTable;
+		int dp = dstOff;
+		for (int i = off, end = off + len; i < end; i++) {
+			byte c = src[i];
+			if (d[c & 0xFF] >= 0) {
+				dst[dp++] = c;
+			} else if (c == '=') {
+				return -(dp - dstOff + 1);
+			}
+		}
+		return dp - dstOff;
+	}
 
 	/**
 	 * base 64 encode
@@ -87,28 +280,12 @@ public class Base64 {
 	 * @throws IOException
 	 */
 	public static String base64Encode(byte[] b) throws IOException {
-		BitInputStream bis = new BitInputStream(new ByteArrayInputStream(b));
-		bis.setBitsToRead(6);
-		StringBuffer sb = new StringBuffer();
-		int cnt = 0;
-		while (true) {
-			int c = bis.read();
-			// EOF reached
-			if (c == -1) {
-				break;
-			}
-			sb.append(encodeTable[c]);
-			if (++cnt == lineLength) {
-				sb.append("\n");
-				cnt = 0;
-			}
-		}
-		bis.close();
-		while ((sb.length() % 4) != 0) {
-			// padding
-			sb.append('=');
-		}
-		return sb.toString();
+		int n = encodedLength(b.length);
+		ByteArrayOutputStream bout = new ByteArrayOutputStream(lineLength > 0 ? n + n / lineLength + 1 : n + 1);
+		Base64OutputStream out = new Base64OutputStream(bout, lineLength);
+		out.write(b);
+		out.close();
+		return bout.toString("ISO-8859-1");
 	}
 
 	/**
@@ -121,42 +298,32 @@ public class Base64 {
 	 *            Writer
 	 * @throws IOException
 	 */
-	public static void base64Encode(InputStream in, Writer out) throws IOException {
-		BitInputStream bis = new BitInputStream(in);
-		char[] buffer = new char[4000];
-		bis.setBitsToRead(6);
-		int cnt = 0;
-		int bufferPtr = 0;
-		while (true) {
-			int c = bis.read();
-			// EOF reached
-			if (c == -1) {
-				break;
+	public static void base64Encode(InputStream in, final Writer out) throws IOException {
+		OutputStream chars = new OutputStream() {
+			char[] cbuf = new char[0];
+
+			public void write(int b) throws IOException {
+				out.write(b);
 			}
-			buffer[bufferPtr++] = encodeTable[c];
-			if (++cnt == lineLength) {
-				if (bufferPtr + crlf.length >= buffer.length) {
-					out.write(buffer, 0, bufferPtr);
-					bufferPtr = 0;
+
+			public void write(byte[] b, int off, int len) throws IOException {
+				if (cbuf.length < len) {
+					cbuf = new char[len];
 				}
-				for (int i = 0; i < crlf.length; i++) {
-					buffer[bufferPtr++] = crlf[i];
+				for (int i = 0; i < len; i++) {
+					cbuf[i] = (char) (b[off + i] & 0xFF);
 				}
-				cnt = 0;
-			}
-			if (bufferPtr == buffer.length) {
-				out.write(buffer);
-				bufferPtr = 0;
+				out.write(cbuf, 0, len);
 			}
+		};
+		Base64OutputStream bout = new Base64OutputStream(chars, lineLength);
+		byte[] buffer = new byte[BLOCK];
+		int r;
+		while ((r = in.read(buffer)) != -1) {
+			bout.write(buffer, 0, r);
 		}
-		bis.close();
-		while ((bufferPtr % 4) != 0) {
-			// padding
-			buffer[bufferPtr++] = '=';
-		}
-		if (bufferPtr > 0) {
-			out.write(buffer, 0, bufferPtr);
-		}
+		bout.finish();
+		in.close();
 	}
 
 	/**
@@ -167,33 +334,21 @@ public class Base64 {
 	 * @return byte array
 	 */
 	public static byte[] base64Decode(String s) {
-		char[] chrs = s.toCharArray();
-		ByteArrayOutputStream bout = new ByteArrayOutputStream();
-		@SuppressWarnings("resource")
-		BitOutputStream bos = new BitOutputStream(bout);
-		bos.setBitsToWrite(6);
-
-		boolean flush = true;
+		byte[] src;
 		try {
-			for (int i = 0; i < chrs.length; i++) {
-				char c = chrs[i];
-				// start of padding
-				if (c == '=') {
-					flush = false;
-					break;
-				}
-				int c0 = decodeTable[c];
-				if (c0 != -1) {
-					bos.write(c0);
-				}
-			}
-			if (flush) {
-				bos.flush();
-			}
-		} catch (IOException ex) {
-			Logger.getLogger(BIOFactory.class.getName()).throwing(Base64.class.getName(), "base64Decode", ex);
+			// characters outside of ISO-8859-1 become '?' which is skipped
+			src = s.getBytes("ISO-8859-1");
+		} catch (UnsupportedEncodingException ex) {
+			throw new RuntimeException(ex);
 		}
-		return bout.toByteArray();
+		byte[] dst = new byte[maxDecodedLength(src.length)];
+		int n = decode(src, 0, src.length, dst, 0);
+		if (n == dst.length) {
+			return dst;
+		}
+		byte[] res = new byte[n];
+		System.arraycopy(dst, 0, res, 0, n);
+		return res;
 	}
 
 	/**
@@ -205,30 +360,32 @@ public class Base64 {
 	 *            OutputStream
 	 * @throws IOException
 	 */
-	public static void base64Decode(Reader in, OutputStream out) throws IOException {
-		@SuppressWarnings("resource")
-		BitOutputStream bos = new BitOutputStream(out);
-		bos.setBitsToWrite(6);
-
-		boolean flush = true;
+	public static void base64Decode(final Reader in, OutputStream out) throws IOException {
+		InputStream chars = new InputStream() {
+			char[] cbuf = new char[0];
 
-		while (true) {
-			int c = in.read();
-			if (c == -1) {
-				break;
-			}
-			// start of padding
-			if (c == '=') {
-				flush = false;
-				break;
+			public int read() throws IOException {
+				int c = in.read();
+				return c > 0xFF ? 0 : c;
 			}
-			final int b = decodeTable[c];
-			if (b != -1) {
-				bos.write(b);
+
+			public int read(byte[] b, int off, int len) throws IOException {
+				if (cbuf.length < len) {
+					cbuf = new char[len];
+				}
+				int r = in.read(cbuf, 0, len);
+				for (int i = 0; i < r; i++) {
+					char c = cbuf[i];
+					b[off + i] = c > 0xFF ? 0 : (byte) c;
+				}
+				return r;
 			}
-		}
-		if (flush) {
-			bos.flush();
+		};
+		Base64InputStream bin = new Base64InputStream(chars);
+		byte[] buffer = new byte[BLOCK];
+		int r;
+		while ((r = bin.read(buffer)) != -1) {
+			out.write(buffer, 0, r);
 		}
 	}
 }
@@ -80,6 +80,30 @@ public class Base64DInputStream extends InputStream {
         }
     }
 
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        int total = 0;
+        while (total < len && !finished) {
+            if (buffer == null || p >= buffer.length) {
+                next();
+                if (buffer == null) {
+                    finished = true;
+                    break;
+                }
+            }
+            int k = Math.min(len - total, buffer.length - p);
+            System.arraycopy(buffer, p, b, off + total, k);
+            p += k;
+            total += k;
+        }
+        return total == 0 ? -1 : total;
+    }
+
     /**
      * switch to next String
      */
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) Andrey Kuznetsov. All Rights Reserved.
+ *
+ * http://uio.imagero.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  o Neither the name of Andrey Kuznetsov nor the names of
+ *    its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.imagero.uio.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * InputStream which decodes base 64 encoded data from underlying stream in blocks.
+ * Characters which are not in base 64 alphabet are skipped, decoding stops at first padding character.
+ */
+public class Base64InputStream extends FilterInputStream {
+
+    private static final int BLOCK = 4096;
+
+    private final byte[] raw = new byte[BLOCK];
+    /** base 64 characters which are not decoded yet */
+    private final byte[] quad = new byte[BLOCK + 3];
+    private int quadCount;
+
+    private final byte[] decoded = new byte[Base64.maxDecodedLength(quad.length)];
+    private int pos;
+    private int count;
+    private boolean eof;
+
+    public Base64InputStream(InputStream in) {
+        super(in);
+    }
+
+    private boolean fill() throws IOException {
+        while (pos == count) {
+            if (eof) {
+                return false;
+            }
+            int r = in.read(raw, 0, raw.length);
+            if (r == -1) {
+                eof = true;
+            } else {
+                int n = Base64.filter(raw, 0, r, quad, quadCount);
+                if (n < 0) {
+                    n = -n - 1;
+                    eof = true;
+                }
+                quadCount += n;
+            }
+            int full = eof ? quadCount : quadCount & ~3;
+            count = Base64.decode(quad, 0, full, decoded, 0);
+            pos = 0;
+            quadCount -= full;
+            System.arraycopy(quad, full, quad, 0, quadCount);
+        }
+        return true;
+    }
+
+    public int read() throws IOException {
+        if (pos == count && !fill()) {
+            return -1;
+        }
+        return decoded[pos++] & 0xFF;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        int total = 0;
+        while (total < len) {
+            if (pos == count && (total > 0 && in.available() <= 0 || !fill())) {
+                break;
+            }
+            int k = Math.min(len - total, count - pos);
+            System.arraycopy(decoded, pos, b, off + total, k);
+            pos += k;
+            total += k;
+        }
+        return total == 0 ? -1 : total;
+    }
+
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && (pos < count || fill())) {
+            int k = (int) Math.min(n - skipped, count - pos);
+            pos += k;
+            skipped += k;
+        }
+        return skipped;
+    }
+
+    public int available() throws IOException {
+        return count - pos;
+    }
+
+    public boolean markSupported() {
+        return false;
+    }
+
+    public void mark(int readlimit) {
+    }
+
+    public void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+}
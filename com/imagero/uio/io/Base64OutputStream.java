@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) Andrey Kuznetsov. All Rights Reserved.
+ *
+ * http://uio.imagero.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  o Neither the name of Andrey Kuznetsov nor the names of
+ *    its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.imagero.uio.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * OutputStream which base 64 encodes written data in blocks.
+ * finish() (or close()) must be called to write last (padded) group.
+ */
+public class Base64OutputStream extends FilterOutputStream {
+
+    private static final int BLOCK = 3 * 1024;
+
+    private final int lineLength;
+    private int column;
+
+    private final byte[] pending = new byte[3];
+    private int pendingCount;
+
+    private final byte[] encoded;
+    private final byte[] wrapped;
+    private boolean finished;
+
+    /**
+     * create Base64OutputStream without line breaks
+     */
+    public Base64OutputStream(OutputStream out) {
+        this(out, 0);
+    }
+
+    /**
+     * @param lineLength line break is inserted after every lineLength characters (0 - no line breaks)
+     */
+    public Base64OutputStream(OutputStream out, int lineLength) {
+        super(out);
+        this.lineLength = lineLength;
+        this.encoded = new byte[Base64.encodedLength(BLOCK)];
+        this.wrapped = lineLength > 0 ? new byte[encoded.length + encoded.length / lineLength + 1] : null;
+    }
+
+    public void write(int b) throws IOException {
+        pending[pendingCount++] = (byte) b;
+        if (pendingCount == 3) {
+            emit(Base64.encode(pending, 0, 3, encoded, 0));
+            pendingCount = 0;
+        }
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (finished) {
+            throw new IOException("Stream finished");
+        }
+        while (pendingCount > 0 && len > 0) {
+            write(b[off++]);
+            len--;
+        }
+        while (len >= 3) {
+            int k = Math.min(len - len % 3, BLOCK);
+            emit(Base64.encode(b, off, k, encoded, 0));
+            off += k;
+            len -= k;
+        }
+        while (len > 0) {
+            pending[pendingCount++] = b[off++];
+            len--;
+        }
+    }
+
+    private void emit(int n) throws IOException {
+        if (lineLength <= 0) {
+            out.write(encoded, 0, n);
+            return;
+        }
+        int dp = 0;
+        for (int i = 0; i < n;) {
+            if (column == lineLength) {
+                wrapped[dp++] = '\n';
+                column = 0;
+            }
+            int k = Math.min(n - i, lineLength - column);
+            System.arraycopy(encoded, i, wrapped, dp, k);
+            dp += k;
+            i += k;
+            column += k;
+        }
+        out.write(wrapped, 0, dp);
+    }
+
+    /**
+     * write remaining data with padding without closing underlying stream.
+     */
+    public void finish() throws IOException {
+        if (!finished) {
+            finished = true;
+            if (pendingCount > 0) {
+                emit(Base64.encode(pending, 0, pendingCount, encoded, 0));
+                pendingCount = 0;
+            }
+            out.flush();
+        }
+    }
+
+    public void close() throws IOException {
+        finish();
+        super.close();
+    }
+}
@@ -44,22 +44,12 @@ import java.io.InputStream;
 public class BitInputStream extends FilterInputStream implements Snapable {
 
     int vbits = 0;
-    int bitbuf = 0;
-    int markBitbuf;
+    long bitbuf = 0;
+    long markBitbuf;
     int markVbits;
     private int bitsToRead = 8;
     boolean invertBitOrder;
     boolean eolReached;
-    
-    static final int[] bmask = createMask();
-
-    private static int[] createMask() {
-	int[] msk = new int[32];
-	for (int i = 0; i < msk.length; i++) {
-	    msk[i] = (1 << i) - 1;
-	}
-	return msk;
-    }
 
     public BitInputStream(InputStream in) {
 	super(in);
@@ -85,7 +75,7 @@ public class BitInputStream extends FilterInputStream implements Snapable {
     }
 
     /**
-     * set how much bits is read every read() call (max 8)
+     * set how much bits is read every read() call (max 32)
      * 
      * @param bitsToRead
      */
@@ -117,15 +107,10 @@ public class BitInputStream extends FilterInputStream implements Snapable {
 	if (nbits == 0) {
 	    return 0;
 	}
-//	// too many bits requested
-//	if (nbits > 32) {
-//	    throw new IllegalArgumentException("only 32 bit can be read at once");
-//	}
-//	if (nbits > 24) {
-//	    int nbits0 = nbits / 2;
-//	    int nbits1 = nbits - nbits0;
-//	    return (read(nbits0) << nbits1) | read(nbits1);
-//	}
+	// too many bits requested
+	if (nbits > 32) {
+	    throw new IllegalArgumentException("only 32 bit can be read at once");
+	}
 	// not anough bits in buffer
 	if (nbits > vbits) {
 	    fillBuffer(nbits);
@@ -135,7 +120,7 @@ public class BitInputStream extends FilterInputStream implements Snapable {
 	    eolReached = true;
 	    return -1;
 	}
-	ret = (bitbuf >> (vbits - nbits)) & bmask[nbits];
+	ret = bits(nbits);
 	vbits -= nbits;
 
 	if (vbits < 0) {
@@ -156,8 +141,15 @@ public class BitInputStream extends FilterInputStream implements Snapable {
 	    eolReached = true;
 	    return -1;
 	}
-	int k = (bitbuf >> (vbits - nbits)) & bmask[nbits];
-	return k;
+	return bits(nbits);
+    }
+
+    /**
+     * next nbits from bit buffer, missing bits (at EOF) are filled with 0
+     */
+    private int bits(int nbits) {
+	long v = nbits <= vbits ? bitbuf >>> (vbits - nbits) : bitbuf << (nbits - vbits);
+	return (int) (v & (0xFFFFFFFFL >>> (32 - nbits)));
     }
     
     public int available() throws IOException {
@@ -199,6 +191,14 @@ public class BitInputStream extends FilterInputStream implements Snapable {
 	if (len <= 0) {
 	    return 0;
 	}
+	// byte aligned 8 bit reads go directly to underlying stream
+	if (bitsToRead == 8 && vbits == 0 && !invertBitOrder) {
+	    int r = in.read(b, off, len);
+	    if (r == -1) {
+		eolReached = true;
+	    }
+	    return r;
+	}
 	int c = read();
 	if (c == -1) {
 	    return -1;
@@ -286,7 +286,7 @@ public class BitInputStream extends FilterInputStream implements Snapable {
 	    if (invertBitOrder) {
 		c = flipTable[c] & 0xFF;
 	    }
-	    bitbuf = (bitbuf << 8) + (c & 0xFF);
+	    bitbuf = (bitbuf << 8) | (c & 0xFF);
 	    vbits += 8;
 	}
     }
@@ -341,8 +341,8 @@ public class BitInputStream extends FilterInputStream implements Snapable {
 
     public static class BisSnapshot extends StreamSnapshot {
 	int vbits = 0;
-	int bitbuf = 0;
-	int markBitbuf;
+	long bitbuf = 0;
+	long markBitbuf;
 	int markVbits;
 	private int bitsToRead = 8;
 	boolean invertBitOrder;
@@ -1,49 +1,326 @@
 package com.imagero.uio.io;
 
-import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.locks.LockSupport;
 
-import com.imagero.java.event.IActionEvent;
-import com.imagero.java.event.IActionListener;
-
+/**
+ * Fixed capacity ring buffer between one writing and one reading thread.
+ * Positions are published through volatile fields, so no locks are needed.
+ * Writer blocks while buffer is full, reader blocks while buffer is empty
+ * (how they wait is defined by WaitStrategy).
+ * <pre>
+ * BlockingIOBuffer buffer = new BlockingIOBuffer(1 &lt;&lt; 20);
+ * // receiver thread
+ * OutputStream out = buffer.getOutputStream();
+ * ...
+ * out.close(); // end of data
+ * // decoder thread
+ * InputStream in = buffer.getInputStream();
+ * </pre>
+ */
 public class BlockingIOBuffer {
 
-    InputStream in;
+    public enum WaitStrategy {
+        /**
+         * busy spin - lowest latency, occupies one core per waiting thread
+         */
+        SPIN,
+        /**
+         * spin with Thread.yield()
+         */
+        YIELD,
+        /**
+         * spin shortly then park with LockSupport - suitable for virtual threads
+         */
+        PARK
+    }
+
+    private static final int SPINS = 128;
+
+    private final byte[] buffer;
+    private final int capacity;
+    private final int mask;
+    private final WaitStrategy strategy;
+
+    private volatile long writePos;
+    private volatile long readPos;
+
+    /** writer's copy of readPos */
+    private long cachedReadPos;
+    /** reader's copy of writePos */
+    private long cachedWritePos;
+
+    private volatile boolean writeClosed;
+    private volatile boolean readClosed;
+
+    private volatile Thread waitingWriter;
+    private volatile Thread waitingReader;
+
+    private InputStream inputStream;
+    private OutputStream outputStream;
+
+    /**
+     * @param capacity buffer capacity (rounded up to power of 2)
+     */
+    public BlockingIOBuffer(int capacity) {
+        this(capacity, WaitStrategy.PARK);
+    }
+
+    public BlockingIOBuffer(int capacity, WaitStrategy strategy) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("" + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.capacity = size;
+        this.mask = size - 1;
+        this.buffer = new byte[size];
+        this.strategy = strategy;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Write len bytes, waits while buffer is full.
+     *
+     * @throws IOException if reader or writer side is closed
+     */
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (writeClosed) {
+            throw new IOException("Buffer closed for writing");
+        }
+        while (len > 0) {
+            long w = writePos;
+            int free = capacity - (int) (w - cachedReadPos);
+            if (free == 0) {
+                free = awaitSpace(w);
+            }
+            int n = Math.min(len, free);
+            int index = (int) w & mask;
+            int first = Math.min(n, capacity - index);
+            System.arraycopy(b, off, buffer, index, first);
+            if (first < n) {
+                System.arraycopy(b, off + first, buffer, 0, n - first);
+            }
+            writePos = w + n;
+            signal(waitingReader);
+            off += n;
+            len -= n;
+        }
+    }
+
+    public void write(int b) throws IOException {
+        if (writeClosed) {
+            throw new IOException("Buffer closed for writing");
+        }
+        long w = writePos;
+        if (w - cachedReadPos == capacity) {
+            awaitSpace(w);
+        }
+        buffer[(int) w & mask] = (byte) b;
+        writePos = w + 1;
+        signal(waitingReader);
+    }
+
+    /**
+     * Read up to len bytes, waits until at least one byte is available.
+     *
+     * @return number of bytes read or -1 if writer is closed and all data is read
+     */
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        long r = readPos;
+        int available = (int) (cachedWritePos - r);
+        if (available == 0 && (available = awaitData(r)) == 0) {
+            return -1;
+        }
+        int n = Math.min(len, available);
+        int index = (int) r & mask;
+        int first = Math.min(n, capacity - index);
+        System.arraycopy(buffer, index, b, off, first);
+        if (first < n) {
+            System.arraycopy(buffer, 0, b, off + first, n - first);
+        }
+        readPos = r + n;
+        signal(waitingWriter);
+        return n;
+    }
+
+    public int read() throws IOException {
+        long r = readPos;
+        if (cachedWritePos == r && awaitData(r) == 0) {
+            return -1;
+        }
+        int v = buffer[(int) r & mask] & 0xFF;
+        readPos = r + 1;
+        signal(waitingWriter);
+        return v;
+    }
+
+    /**
+     * @return number of bytes which can be read without waiting
+     */
+    public int available() {
+        return (int) (writePos - readPos);
+    }
+
+    /**
+     * Signal end of data. Reader gets -1 after all written data is read.
+     */
+    public void closeWrite() {
+        writeClosed = true;
+        signal(waitingReader);
+    }
+
+    /**
+     * Signal that reader is done. Waiting and following writes fail with IOException.
+     */
+    public void closeRead() {
+        readClosed = true;
+        signal(waitingWriter);
+    }
+
+    /**
+     * @return InputStream which reads from this buffer (close() calls closeRead())
+     */
+    public synchronized InputStream getInputStream() {
+        if (inputStream == null) {
+            inputStream = new BufferInputStream();
+        }
+        return inputStream;
+    }
 
-    int bufferSize;
+    /**
+     * @return OutputStream which writes to this buffer (close() calls closeWrite())
+     */
+    public synchronized OutputStream getOutputStream() {
+        if (outputStream == null) {
+            outputStream = new BufferOutputStream();
+        }
+        return outputStream;
+    }
+
+    /**
+     * @return free space (at least 1)
+     */
+    private int awaitSpace(long w) throws IOException {
+        int spins = 0;
+        while (true) {
+            if (readClosed) {
+                throw new IOException("Buffer closed for reading");
+            }
+            long r = readPos;
+            if (w - r < capacity) {
+                cachedReadPos = r;
+                return capacity - (int) (w - r);
+            }
+            if (strategy == WaitStrategy.PARK && spins >= SPINS) {
+                waitingWriter = Thread.currentThread();
+                if (w - readPos == capacity && !readClosed) {
+                    LockSupport.park(this);
+                }
+                waitingWriter = null;
+                checkInterrupted();
+            } else {
+                spins++;
+                pause();
+            }
+        }
+    }
+
+    /**
+     * @return available bytes or 0 if writer is closed and all data is read
+     */
+    private int awaitData(long r) throws IOException {
+        int spins = 0;
+        while (true) {
+            boolean closed = writeClosed;
+            long w = writePos;
+            if (w != r || closed || readClosed) {
+                cachedWritePos = w;
+                return (int) (w - r);
+            }
+            if (strategy == WaitStrategy.PARK && spins >= SPINS) {
+                waitingReader = Thread.currentThread();
+                if (writePos == r && !writeClosed) {
+                    LockSupport.park(this);
+                }
+                waitingReader = null;
+                checkInterrupted();
+            } else {
+                spins++;
+                pause();
+            }
+        }
+    }
+
+    private void pause() {
+        if (strategy != WaitStrategy.SPIN) {
+            Thread.yield();
+        }
+    }
+
+    private static void checkInterrupted() throws InterruptedIOException {
+        if (Thread.interrupted()) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    private static void signal(Thread t) {
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
 
-    byte[] buffer;
+    class BufferInputStream extends InputStream {
+        public int read() throws IOException {
+            return BlockingIOBuffer.this.read();
+        }
 
-    ByteArrayOutputStreamExt out;
-    ByteArrayInputStream bais;
+        public int read(byte[] b, int off, int len) throws IOException {
+            return BlockingIOBuffer.this.read(b, off, len);
+        }
 
-    public BlockingIOBuffer(int bufferSize) {
-	this.bufferSize = bufferSize;
-	this.buffer = new byte[bufferSize * 2];
-	out = new ByteArrayOutputStreamExt(bufferSize, new IActionListener() {
-	    public void actionPerformed(IActionEvent e) {
+        public int available() {
+            return BlockingIOBuffer.this.available();
+        }
 
-	    }
-	});
+        public void close() {
+            closeRead();
+        }
     }
 
-    static class BAInputStream extends ByteArrayInputStream {
+    class BufferOutputStream extends OutputStream {
+        public void write(int b) throws IOException {
+            BlockingIOBuffer.this.write(b);
+        }
 
-	public BAInputStream(byte[] buf) {
-	    super(buf);
-	}
+        public void write(byte[] b, int off, int len) throws IOException {
+            BlockingIOBuffer.this.write(b, off, len);
+        }
 
-	synchronized int copyFromBuffer(byte[] buffer) {
-	    if (pos > 0) {
-		int length = available();
-		System.arraycopy(buf, pos, buf, 0, length);
-		count -= pos;
-		pos = 0;
-	    }
-	    int toCopy = Math.min(buffer.length, buf.length - count);
-	    System.arraycopy(buffer, 0, buffer, count, toCopy);
-	    
-	    return toCopy;
-	}
+        public void close() {
+            closeWrite();
+        }
     }
 }
@@ -5,13 +5,22 @@ import com.imagero.java.event.IActionEvent;
 
 import java.io.FilterInputStream;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+
+import com.imagero.uio.bio.IOController;
 
 /**
  * Date: 19.07.2009
  *
  * Default processing for Encoded Streams.
+ * <br>
+ * Optionally decode() may run on producer thread (see setPipelined) while
+ * consumer reads previously decoded buffers.
  * 
  * @author Andrey Kuznetsov
  */
@@ -22,6 +31,9 @@ public abstract class DecoderInputStream extends FilterInputStream {
 	protected boolean checkDrain = false;
 
 	boolean finished;
+	boolean started;
+
+	private Pipeline pipeline;
 
 	public DecoderInputStream(InputStream in) {
 		this(in, 2048);
@@ -34,10 +46,40 @@ public abstract class DecoderInputStream extends FilterInputStream {
 		out = create();
 	}
 
+	/**
+	 * Run decode() on producer thread. Decoded data is handed to reader in
+	 * buffers of bufferSize bytes; producer waits if all buffers are full.
+	 * Must be called before first read. decode() and drain hooks are then
+	 * called on producer thread only.
+	 * 
+	 * @param buffers
+	 *            number of decoded buffers (0 - decode on reading thread)
+	 * @param executor
+	 *            Executor for producer (if null then
+	 *            IOController.getDefaultExecutor() is used)
+	 */
+	public void setPipelined(int buffers, Executor executor) {
+		if (started) {
+			throw new IllegalStateException("decoding already started");
+		}
+		if (buffers <= 0) {
+			pipeline = null;
+		} else {
+			pipeline = new Pipeline(buffers, executor != null ? executor : IOController.getDefaultExecutor());
+		}
+	}
+
+	public boolean isPipelined() {
+		return pipeline != null;
+	}
+
 	public final int read() throws IOException {
 		if (finished) {
 			return -1;
 		}
+		if (pipeline != null) {
+			return pipeline.read();
+		}
 		if (bais.available() <= 0) {
 			decode0();
 		}
@@ -55,13 +97,38 @@ public abstract class DecoderInputStream extends FilterInputStream {
 		if (finished) {
 			return -1;
 		}
+		if (pipeline != null) {
+			return pipeline.read(b, off, len);
+		}
 		if (bais.available() <= 0) {
 			decode0();
 		}
 		return bais.read(b, off, len);
 	}
 
+	public long skip(long n) throws IOException {
+		if (pipeline == null) {
+			return super.skip(n);
+		}
+		return pipeline.skip(n);
+	}
+
+	public int available() throws IOException {
+		if (pipeline == null) {
+			return super.available();
+		}
+		return pipeline.available();
+	}
+
+	public void close() throws IOException {
+		if (pipeline != null) {
+			pipeline.cancel();
+		}
+		super.close();
+	}
+
 	private void decode0() throws IOException {
+		started = true;
 		finished = decode();
 		// if(/*checkDrain &&*/ (!out.drained || bais.available() == 0)) {
 		if (bais.available() == 0) {
@@ -106,11 +173,176 @@ public abstract class DecoderInputStream extends FilterInputStream {
 	 * drain buffer and reinit input
 	 */
 	protected void drain() {
+		if (pipeline != null) {
+			pipeline.handOff();
+			return;
+		}
 		int length = out.drain(buffer);
 		bais.setPos(0);
 		bais.setLength(length);
 	}
 
+	private static class Chunk {
+		static final Chunk END = new Chunk(null, 0, null);
+
+		final byte[] data;
+		final int length;
+		final IOException error;
+
+		Chunk(byte[] data, int length, IOException error) {
+			this.data = data;
+			this.length = length;
+			this.error = error;
+		}
+	}
+
+	/**
+	 * Ring of decoded buffers between producer (runs decode()) and reader.
+	 */
+	private class Pipeline implements Runnable {
+		final Executor executor;
+		final ArrayBlockingQueue<byte[]> free;
+		/** one more slot for END, so producer never waits to finish */
+		final ArrayBlockingQueue<Chunk> filled;
+		volatile boolean cancelled;
+
+		Chunk current;
+		int pos;
+
+		Pipeline(int buffers, Executor executor) {
+			this.executor = executor;
+			free = new ArrayBlockingQueue<byte[]>(buffers);
+			filled = new ArrayBlockingQueue<Chunk>(buffers + 1);
+			for (int i = 0; i < buffers; i++) {
+				free.add(new byte[buffer.length]);
+			}
+		}
+
+		public void run() {
+			Chunk last = Chunk.END;
+			try {
+				boolean done = false;
+				while (!done && !cancelled) {
+					done = decode();
+				}
+				while (out.size() > 0 && !cancelled) {
+					bufferFull();
+				}
+			} catch (CancellationException ex) {
+				// closed
+			} catch (IOException ex) {
+				last = new Chunk(null, 0, ex);
+			} catch (Throwable ex) {
+				last = new Chunk(null, 0, new IOException(ex));
+			}
+			filled.add(last);
+		}
+
+		/**
+		 * called on producer thread when out is full
+		 */
+		void handOff() {
+			byte[] b;
+			try {
+				b = free.take();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new CancellationException();
+			}
+			if (cancelled) {
+				free.add(b);
+				throw new CancellationException();
+			}
+			int length = out.drain(b);
+			if (length > 0) {
+				filled.add(new Chunk(b, length, null));
+			} else {
+				free.add(b);
+			}
+		}
+
+		boolean next() throws IOException {
+			if (current != null) {
+				free.add(current.data);
+				current = null;
+			}
+			if (!started) {
+				started = true;
+				executor.execute(this);
+			}
+			Chunk c;
+			try {
+				c = filled.take();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+			if (c.data == null) {
+				finished = true;
+				if (c.error != null) {
+					throw c.error;
+				}
+				return false;
+			}
+			current = c;
+			pos = 0;
+			return true;
+		}
+
+		int read() throws IOException {
+			if ((current == null || pos == current.length) && !next()) {
+				return -1;
+			}
+			return current.data[pos++] & 0xFF;
+		}
+
+		int read(byte[] b, int off, int len) throws IOException {
+			if (len <= 0) {
+				return 0;
+			}
+			if ((current == null || pos == current.length) && !next()) {
+				return -1;
+			}
+			int k = Math.min(len, current.length - pos);
+			System.arraycopy(current.data, pos, b, off, k);
+			pos += k;
+			return k;
+		}
+
+		long skip(long n) throws IOException {
+			long skipped = 0;
+			while (skipped < n && !finished) {
+				if ((current == null || pos == current.length) && !next()) {
+					break;
+				}
+				int k = (int) Math.min(n - skipped, current.length - pos);
+				pos += k;
+				skipped += k;
+			}
+			return skipped;
+		}
+
+		int available() {
+			return current == null ? 0 : current.length - pos;
+		}
+
+		void cancel() {
+			cancelled = true;
+			finished = true;
+			if (current != null) {
+				free.offer(current.data);
+				current = null;
+			}
+			// release buffers, so producer can see cancellation
+			Chunk c;
+			while ((c = filled.poll()) != null) {
+				if (c.data != null) {
+					free.offer(c.data);
+				}
+			}
+		}
+	}
+
 	/**
 	 * We need direct access to pos and count variables of ByteArrayInputStream. One
 	 * wise man (Arthur van Hoff) made them protected, not private! Thanks Arthur!
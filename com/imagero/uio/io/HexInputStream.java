@@ -35,10 +35,11 @@ package com.imagero.uio.io;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
 /**
+ * Decodes ASCIIHex encoded data in blocks. Characters which are not hex digits
+ * (e.g. whitespace) are skipped, decoding stops at '&gt;'.
+ *
  * @author Andrey Kuznetsov
  */
 public class HexInputStream extends FilterInputStream {
@@ -55,25 +56,84 @@ public class HexInputStream extends FilterInputStream {
         }
         for (int j = 0; j < encodeTable.length; j++) {
             decodeTable[encodeTable[j]] = j;
+            decodeTable[Character.toLowerCase(encodeTable[j])] = j;
         }
     }
 
+    private static final int BLOCK = 4096;
+
     boolean finished;
 
-    byte[] buffer = new byte[80];
+    byte[] raw = new byte[BLOCK];
+    byte[] buffer = new byte[BLOCK / 2 + 1];
     int count;
     int pos;
 
+    /** pending high nibble or -1 */
+    private int nibble = -1;
+
     public HexInputStream(InputStream in) {
         super(in);
     }
 
+    /**
+     * Decode hex data. Non hex characters are skipped, decoding stops at '&gt;'.
+     * Odd number of digits is completed with 0.
+     *
+     * @return number of bytes written to dst (at most (len + 1) / 2)
+     */
+    public static int decode(byte[] src, int off, int len, byte[] dst, int dstOff) {
+        HexInputStream d = new HexInputStream(null);
+        int k = d.decodeBlock(src, off, len, dst, dstOff);
+        return k + d.finish(dst, dstOff + k);
+    }
+
+    private int decodeBlock(byte[] src, int off, int len, byte[] dst, int dstOff) {
+        final int[] t = decodeTable;
+        int dp = dstOff;
+        int end = off + len;
+        int hi = nibble;
+        for (int i = off; i < end; i++) {
+            int c = src[i] & 0xFF;
+            if (hi < 0 && i + 1 < end) {
+                int v = t[c] << 4 | t[src[i + 1] & 0xFF];
+                if (v >= 0) {
+                    dst[dp++] = (byte) v;
+                    i++;
+                    continue;
+                }
+            }
+            int v = t[c];
+            if (v >= 0) {
+                if (hi < 0) {
+                    hi = v;
+                }
+                else {
+                    dst[dp++] = (byte) (hi << 4 | v);
+                    hi = -1;
+                }
+            }
+            else if (c == '>') {
+                finished = true;
+                break;
+            }
+        }
+        nibble = hi;
+        return dp - dstOff;
+    }
+
+    private int finish(byte[] dst, int dstOff) {
+        if (nibble < 0) {
+            return 0;
+        }
+        dst[dstOff] = (byte) (nibble << 4);
+        nibble = -1;
+        return 1;
+    }
+
     public int read() throws IOException {
         if (pos >= count) {
-            if (finished) {
-                return -1;
-            }
-	    fillBuffer();
+            fillBuffer();
         }
         if (pos < count) {
             return buffer[pos++] & 0xFF;
@@ -81,44 +141,35 @@ public class HexInputStream extends FilterInputStream {
         return -1;
     }
 
-    protected void fillBuffer() {
-        int k = 0;
-        try {
-            for (; k < buffer.length; k++) {
-                int b0 = in.read();
-                if (b0 == 13 || b0 == 10) {
-                    k--;
-                    continue;
-                }
-                if (b0 == '>') {
-                    k++;
-                    finished = true;
-                    break;
-                }
-                int b1 = in.read();
-                int d0 = decodeTable[b0];
-                int d1 = decodeTable[b1];
-                if (d0 == -1 || d1 == -1) {
-                    k--;
-                    continue;
-                }
-                buffer[k] = (byte) (d0 * 16 + d1);
+    protected void fillBuffer() throws IOException {
+        count = 0;
+        pos = 0;
+        while (count == 0 && !finished) {
+            int r = in.read(raw, 0, raw.length);
+            if (r == -1) {
+                finished = true;
+            }
+            else {
+                count = decodeBlock(raw, 0, r, buffer, 0);
+            }
+            if (finished) {
+                count += finish(buffer, count);
             }
         }
-        catch (Throwable ex) {
-			Logger.getLogger(getClass().getName()).log(Level.WARNING, ex.getMessage(), ex);
-        }
-        count = k;
-        pos = 0;
     }
 
     public long skip(long n) throws IOException {
         long i = 0;
-        for (; i < n; i++) {
-            int a = read();
-            if (a == -1) {
-                break;
+        while (i < n) {
+            if (pos >= count) {
+                fillBuffer();
+                if (count == 0) {
+                    break;
+                }
             }
+            int k = (int) Math.min(n - i, count - pos);
+            pos += k;
+            i += k;
         }
         return i;
     }
@@ -134,18 +185,15 @@ public class HexInputStream extends FilterInputStream {
         if (len <= 0) {
             return 0;
         }
-        int i = 0;
-        try {
-            for (; i < len; i++) {
-                int a = read();
-                if (a == -1) {
-                    break;
-                }
-                b[i] = (byte) a;
+        if (pos >= count) {
+            fillBuffer();
+            if (count == 0) {
+                return -1;
             }
         }
-        catch (IOException ex) {
-        }
-        return i == 0 ? -1 : i;
+        int k = Math.min(len, count - pos);
+        System.arraycopy(buffer, pos, b, off, k);
+        pos += k;
+        return k;
     }
 }
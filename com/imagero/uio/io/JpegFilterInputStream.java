@@ -42,6 +42,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
+import com.imagero.uio.RandomAccessInput;
+
 
 /**
  * remove all App blocks from jpeg file
@@ -150,6 +152,15 @@ public class JpegFilterInputStream extends FilterInputStream {
         return bout.toByteArray();
     }
 
+    /**
+     * filter out given markers from JPEG stream in <code>in</code>.
+     * Unlike other filter methods data is copied in bulk between removed segments.
+     * @see JpegMarkerIndex
+     */
+    public static void filter(RandomAccessInput in, OutputStream out, int[] markers) throws IOException {
+        JpegMarkerIndex.create(in).writeFiltered(out, markers);
+    }
+
     int[] markers;
 
     /**
@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) Andrey Kuznetsov. All Rights Reserved.
+ *
+ * http://uio.imagero.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  o Neither the name of Andrey Kuznetsov nor the names of
+ *    its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.imagero.uio.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.imagero.uio.RandomAccessInput;
+
+/**
+ * One pass index of all segments of JPEG stream.
+ * Entropy coded data after SOS is skipped by scanning for 0xFF and recorded as
+ * segment with marker ENTROPY_CODED_DATA.
+ * Segment data can be read without copying through createInput() or createInputStream().
+ * <pre>
+ * JpegMarkerIndex index = JpegMarkerIndex.create(in);
+ * for (JpegMarkerIndex.Segment s : index.getSegments(JpegFilterInputStream.APP_13)) {
+ *     RandomAccessInput app13 = index.createInput(s);
+ *     ...
+ * }
+ * </pre>
+ */
+public class JpegMarkerIndex {
+
+    public static final int ENTROPY_CODED_DATA = 0;
+
+    public static final int TEM = 0x01;
+    public static final int RST_0 = 0xD0;
+    public static final int RST_7 = 0xD7;
+    public static final int SOI = 0xD8;
+    public static final int EOI = 0xD9;
+    public static final int SOS = 0xDA;
+
+    private static final int SCAN_BUFFER_SIZE = 8192;
+    private static final int COPY_BUFFER_SIZE = 65536;
+
+    private final RandomAccessInput in;
+    private final List<Segment> segments;
+
+    private JpegMarkerIndex(RandomAccessInput in, List<Segment> segments) {
+        this.in = in;
+        this.segments = Collections.unmodifiableList(segments);
+    }
+
+    /**
+     * Index JPEG stream starting at offset 0 of <code>in</code>.
+     * Stream position of <code>in</code> is changed.
+     * Indexing stops after EOI or at end of stream.
+     *
+     * @throws IOException if stream doesn't start with SOI or marker is missing where expected
+     */
+    public static JpegMarkerIndex create(RandomAccessInput in) throws IOException {
+        List<Segment> list = new ArrayList<Segment>();
+        byte[] buf = new byte[SCAN_BUFFER_SIZE];
+        in.seek(0);
+        if (in.read() != 0xFF || in.read() != SOI) {
+            throw new IOException("not a JPEG stream");
+        }
+        list.add(new Segment(SOI, 0, 2, 2, 0));
+        long pos = 2;
+        while (true) {
+            in.seek(pos);
+            int a = in.read();
+            if (a == -1) {
+                break;
+            }
+            if (a != 0xFF) {
+                throw new IOException("marker expected at " + pos);
+            }
+            int marker;
+            long headerLength = 2;
+            // fill bytes
+            while ((marker = in.read()) == 0xFF) {
+                headerLength++;
+            }
+            if (marker == -1) {
+                break;
+            }
+            if (isStandalone(marker)) {
+                list.add(new Segment(marker, pos, headerLength, pos + headerLength, 0));
+                if (marker == EOI) {
+                    break;
+                }
+                pos += headerLength;
+                continue;
+            }
+            int b0 = in.read();
+            int b1 = in.read();
+            if ((b0 | b1) < 0) {
+                throw new EOFException();
+            }
+            int length = (b0 << 8) | b1;
+            if (length < 2) {
+                throw new IOException("invalid segment length " + length + " at " + pos);
+            }
+            long dataOffset = pos + headerLength + 2;
+            list.add(new Segment(marker, pos, headerLength + length, dataOffset, length - 2));
+            pos = dataOffset + length - 2;
+            if (marker == SOS) {
+                long end = scanEntropyCodedData(in, pos, buf);
+                long stop = end < 0 ? in.length() : end;
+                if (stop > pos) {
+                    list.add(new Segment(ENTROPY_CODED_DATA, pos, stop - pos, pos, stop - pos));
+                }
+                if (end < 0) {
+                    break;
+                }
+                pos = end;
+            }
+        }
+        return new JpegMarkerIndex(in, list);
+    }
+
+    private static boolean isStandalone(int marker) {
+        return marker == SOI || marker == EOI || marker == TEM || (marker >= RST_0 && marker <= RST_7);
+    }
+
+    /**
+     * Find next marker after entropy coded data. Stuffed zeros, fill bytes and RST markers are part of data.
+     *
+     * @return offset of 0xFF which starts next marker or -1 if end of stream was reached
+     */
+    private static long scanEntropyCodedData(RandomAccessInput in, long start, byte[] buf) throws IOException {
+        long pos = start;
+        while (true) {
+            in.seek(pos);
+            int n = fill(in, buf);
+            if (n < 2) {
+                return -1;
+            }
+            int i = 0;
+            int last = n - 1;
+            while (i < last) {
+                if (buf[i] != (byte) 0xFF) {
+                    i++;
+                    continue;
+                }
+                int b = buf[i + 1] & 0xFF;
+                if (b == 0 || (b >= RST_0 && b <= RST_7)) {
+                    i += 2;
+                } else if (b == 0xFF) {
+                    i++;
+                } else {
+                    return pos + i;
+                }
+            }
+            if (n < buf.length) {
+                return -1;
+            }
+            pos += i;
+        }
+    }
+
+    private static int fill(RandomAccessInput in, byte[] buf) throws IOException {
+        int n = 0;
+        while (n < buf.length) {
+            int r = in.read(buf, n, buf.length - n);
+            if (r <= 0) {
+                break;
+            }
+            n += r;
+        }
+        return n;
+    }
+
+    public List<Segment> getSegments() {
+        return segments;
+    }
+
+    /**
+     * @return all segments with given marker in stream order
+     */
+    public List<Segment> getSegments(int marker) {
+        List<Segment> list = new ArrayList<Segment>();
+        for (int i = 0; i < segments.size(); i++) {
+            Segment s = segments.get(i);
+            if (s.marker == marker) {
+                list.add(s);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Create RandomAccessInput positioned at data of given segment (after length field).
+     */
+    public RandomAccessInput createInput(Segment s) throws IOException {
+        return in.createInputChild(s.dataOffset, s.dataLength, in.getByteOrder(), false);
+    }
+
+    /**
+     * Create InputStream which reads data of given segment (after length field).
+     */
+    public InputStream createInputStream(Segment s) {
+        return in.createInputStream(s.dataOffset, s.dataLength);
+    }
+
+    /**
+     * Copy whole stream to out except segments with given markers.
+     * Everything between removed segments is copied in bulk.
+     */
+    public void writeFiltered(OutputStream out, int[] markers) throws IOException {
+        byte[] buf = new byte[COPY_BUFFER_SIZE];
+        long pos = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            Segment s = segments.get(i);
+            if (contains(markers, s.marker)) {
+                copy(pos, s.offset, buf, out);
+                pos = s.offset + s.length;
+            }
+        }
+        copy(pos, in.length(), buf, out);
+    }
+
+    private static boolean contains(int[] markers, int marker) {
+        for (int i = 0; i < markers.length; i++) {
+            if (markers[i] == marker) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void copy(long from, long to, byte[] buf, OutputStream out) throws IOException {
+        in.seek(from);
+        long remaining = to - from;
+        while (remaining > 0) {
+            int r = in.read(buf, 0, (int) Math.min(buf.length, remaining));
+            if (r <= 0) {
+                throw new EOFException();
+            }
+            out.write(buf, 0, r);
+            remaining -= r;
+        }
+    }
+
+    public static class Segment {
+        /** marker (second byte) or ENTROPY_CODED_DATA */
+        public final int marker;
+        /** offset of first 0xFF of marker */
+        public final long offset;
+        /** length of whole segment including marker and length field */
+        public final long length;
+        /** offset of segment data (after length field) */
+        public final long dataOffset;
+        public final long dataLength;
+
+        Segment(int marker, long offset, long length, long dataOffset, long dataLength) {
+            this.marker = marker;
+            this.offset = offset;
+            this.length = length;
+            this.dataOffset = dataOffset;
+            this.dataLength = dataLength;
+        }
+
+        public String toString() {
+            return Integer.toHexString(marker) + " " + offset + " " + length;
+        }
+    }
+}
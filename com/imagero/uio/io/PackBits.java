@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) Andrey Kuznetsov. All Rights Reserved.
+ *
+ * http://uio.imagero.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  o Neither the name of Andrey Kuznetsov nor the names of
+ *    its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.imagero.uio.io;
+
+import java.util.Arrays;
+
+/**
+ * Array based PackBits codec (used e.g. for TIFF strips which are already in memory).
+ */
+public class PackBits {
+
+    private PackBits() {
+    }
+
+    /**
+     * Get max size of encoded data (worst case - no runs at all).
+     * @param length length of data to encode
+     * @return max length of encoded data
+     */
+    public static int maxEncodedLength(int length) {
+        return length + (length + 127) / 128;
+    }
+
+    /**
+     * Decode PackBits data. Decoding stops if source is exhausted or destination is full.
+     * @param src compressed data
+     * @param srcOffset offset in <code>src</code>
+     * @param srcLength length of compressed data
+     * @param dst destination array
+     * @param dstOffset offset in <code>dst</code>
+     * @return how much bytes were decoded
+     */
+    public static int decode(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset) {
+        return decode(src, srcOffset, srcLength, dst, dstOffset, dst.length - dstOffset);
+    }
+
+    /**
+     * Decode PackBits data. Decoding stops if source is exhausted or <code>dstLength</code> bytes were decoded.
+     * @param src compressed data
+     * @param srcOffset offset in <code>src</code>
+     * @param srcLength length of compressed data
+     * @param dst destination array
+     * @param dstOffset offset in <code>dst</code>
+     * @param dstLength max count of bytes to decode
+     * @return how much bytes were decoded
+     */
+    public static int decode(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength) {
+        int s = srcOffset;
+        final int sEnd = srcOffset + srcLength;
+        int d = dstOffset;
+        final int dEnd = dstOffset + dstLength;
+        while (s < sEnd && d < dEnd) {
+            int n = src[s++];
+            if (n >= 0) {
+                int count = Math.min(n + 1, Math.min(sEnd - s, dEnd - d));
+                System.arraycopy(src, s, dst, d, count);
+                s += n + 1;
+                d += count;
+            } else if (n != -128) {
+                if (s >= sEnd) {
+                    break;
+                }
+                int count = Math.min(1 - n, dEnd - d);
+                Arrays.fill(dst, d, d + count, src[s++]);
+                d += count;
+            }
+        }
+        return d - dstOffset;
+    }
+
+    /**
+     * Encode data with PackBits. Runs of 3 or more bytes (or 2 bytes outside of literal) are encoded as replicate runs.
+     * @param src data to encode
+     * @param srcOffset offset in <code>src</code>
+     * @param srcLength length of data
+     * @param dst destination array (should have at least maxEncodedLength(srcLength) bytes after <code>dstOffset</code>)
+     * @param dstOffset offset in <code>dst</code>
+     * @return length of encoded data
+     */
+    public static int encode(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset) {
+        int p = srcOffset;
+        final int end = srcOffset + srcLength;
+        int d = dstOffset;
+        while (p < end) {
+            byte v = src[p];
+            int run = 1;
+            while (run < 128 && p + run < end && src[p + run] == v) {
+                run++;
+            }
+            if (run > 1) {
+                dst[d++] = (byte) (1 - run);
+                dst[d++] = v;
+                p += run;
+                continue;
+            }
+            int start = p++;
+            while (p < end && p - start < 128) {
+                if (p + 2 < end && src[p] == src[p + 1] && src[p] == src[p + 2]) {
+                    break;
+                }
+                p++;
+            }
+            int count = p - start;
+            dst[d++] = (byte) (count - 1);
+            System.arraycopy(src, start, dst, d, count);
+            d += count;
+        }
+        return d - dstOffset;
+    }
+}
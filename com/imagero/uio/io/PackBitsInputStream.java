@@ -36,7 +36,7 @@ package com.imagero.uio.io;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.logging.Logger;
+import java.util.Arrays;
 
 /**
  * PackBits decoder
@@ -87,43 +87,86 @@ public class PackBitsInputStream extends FilterInputStream implements Snapable {
         return read(b, 0, b.length);
     }
 
+    /**
+     * Decode up to <code>len</code> bytes. Replicate runs are filled with Arrays.fill,
+     * literals are read from underlying stream with single read call.
+     */
     public int read(byte b[], int off, int len) throws IOException {
-        int i = off;
-
-        try {
-            for(; i < off + len; i++) {
-                int a = read();
-                if(a == -1) {
-                    i--;
+        int n = 0;
+        while (n < len) {
+            if (numSamples == 0 && !nextPacket()) {
+                break;
+            }
+            int count = Math.min(numSamples, len - n);
+            if (copyLiter) {
+                int r = in.read(b, off + n, count);
+                if (r <= 0) {
+                    finished = true;
+                    numSamples = 0;
                     break;
                 }
-                b[i] = (byte) a;
+                count = r;
             }
+            else {
+                Arrays.fill(b, off + n, off + n + count, (byte) value);
+            }
+            n += count;
+            numSamples -= count;
         }
-        catch(IOException ex) {
-            Logger.getLogger(getClass().getName()).warning(ex.getMessage());
+        if (n == 0 && finished && len > 0) {
+            return -1;
         }
-        return i - off;
+        return n;
     }
 
     public int read() throws IOException {
-        if(numSamples == 0) {
-            byte l = read128();
-            if(l < 0) {
-                numSamples = -l + 1;
-                copyLiter = false;
-                value = in.read();
+        if (numSamples == 0 && !nextPacket()) {
+            return -1;
+        }
+        numSamples--;
+        if (copyLiter) {
+            int a = in.read();
+            if (a == -1) {
+                finished = true;
+                numSamples = 0;
             }
-            else {
-                numSamples = l + 1;
-                copyLiter = true;
+            return a;
+        }
+        return value;
+    }
+
+    /**
+     * read header of next packet (and value of replicate run)
+     * @return false if end of stream reached
+     */
+    private boolean nextPacket() throws IOException {
+        if (finished) {
+            return false;
+        }
+        int h;
+        do {
+            h = in.read();
+            if (h == -1) {
+                finished = true;
+                return false;
             }
         }
-        numSamples--;
-        if(copyLiter) {
-            return in.read();
+        while (h == 0x80);
+        byte l = (byte) h;
+        if (l < 0) {
+            value = in.read();
+            if (value == -1) {
+                finished = true;
+                return false;
+            }
+            numSamples = -l + 1;
+            copyLiter = false;
+        }
+        else {
+            numSamples = l + 1;
+            copyLiter = true;
         }
-	return value;
+        return true;
     }
 
     public StreamSnapshot makeSnapshot() {
@@ -136,16 +179,6 @@ public class PackBitsInputStream extends FilterInputStream implements Snapable {
         return snapshot;
     }
 
-    byte read128() throws IOException {
-        do {
-            byte a = (byte) in.read();
-            if(a != -128) {
-                return a;
-            }
-        }
-        while(true);
-    }
-
     public static class PackBitsSnapshot extends StreamSnapshot {
         private boolean finished;
         private int numSamples, value;
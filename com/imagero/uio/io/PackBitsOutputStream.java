@@ -13,171 +13,69 @@ import java.io.OutputStream;
  */
 public class PackBitsOutputStream extends FilterOutputStream {
 
-    private RunBuffer runs;
     int width;
     int cnt;
+    byte[] row;
+    byte[] packed;
 
+    /**
+     * @param out OutputStream
+     * @param width row width in bytes (each row is packed separately)
+     */
     public PackBitsOutputStream(OutputStream out, int width) {
         super(out);
-        runs = new RunBuffer(out);
         this.width = width;
+        int rowLength = width > 0 ? width : 128;
+        this.row = new byte[rowLength];
+        this.packed = new byte[PackBits.maxEncodedLength(rowLength)];
     }
 
     public void write(int b) throws IOException {
-        put(b);
-    }
-
-    private void put(int b) throws IOException {
-        runs.put(b);
-        if (cnt++ == width) {
-            flush();
-            cnt = 0;
+        row[cnt++] = (byte) b;
+        if (cnt == row.length) {
+            flushRow();
         }
     }
 
     public void write(byte b[]) throws IOException {
-        for (int i = 0; i < b.length; i++) {
-            put(b[i] & 0xFF);
-        }
+        write(b, 0, b.length);
     }
 
     public void write(byte b[], int off, int len) throws IOException {
-        for (int i = 0; i < len; i++) {
-            put(b[off + i] & 0xFF);
-        }
-    }
-
-    public void flush() throws IOException {
-        runs.flush();
-    }
-
-    public void close() throws IOException {
-        runs.flush();
-    }
-
-    static class RunOutputStream extends FilterOutputStream {
-        int maxRun;
-        int rep = -2;
-
-        int count;
-
-        public RunOutputStream(OutputStream out, int maxRun) {
-            super(out);
-            this.maxRun = maxRun;
-        }
-
-        public void write(int b) throws IOException {
-            if (b != rep) {
-                throw new IOException("Rep");
+        while (len > 0) {
+            if (cnt == 0 && len >= row.length) {
+                // whole row - encode directly from caller's array
+                int n = PackBits.encode(b, off, row.length, packed, 0);
+                out.write(packed, 0, n);
+                off += row.length;
+                len -= row.length;
+                continue;
             }
-            if (count++ == maxRun) {
-                out.write(count - 1);
-                out.write(rep);
-                count = 0;
-            }
-        }
-
-        public void set(int rep) {
-            this.rep = rep;
-            count = 2;
-        }
-
-        public void flush() throws IOException {
-            if (count != 0) {
-                out.write(count - 1);
-                out.write(rep);
-                count = 0;
+            int toCopy = Math.min(len, row.length - cnt);
+            System.arraycopy(b, off, row, cnt, toCopy);
+            cnt += toCopy;
+            off += toCopy;
+            len -= toCopy;
+            if (cnt == row.length) {
+                flushRow();
             }
         }
     }
 
-    static class RunBuffer {
-        int rep;
-        int count;
-
-        OutputStream out;
-        RunOutputStream ros;
-        private LiteralBuffer lbuf;
-
-        public RunBuffer(OutputStream out) {
-            this.out = out;
-            ros = new RunOutputStream(out, 128);
-            this.lbuf = new LiteralBuffer(out);
-        }
-
-        public void put(int k) throws IOException {
-            if (count == 0) {
-                rep = k;
-                count = 1;
-            } else {
-                if (rep == k) {
-                    if (count++ == 2) {
-                        ros.set(rep);
-                        lbuf.flush();
-                    } else if (count > 2) {
-                        ros.write(rep);
-                    }
-                } else {
-                    if (count > 2) {
-                        ros.flush();
-                    } else {
-                        for (int i = 0; i < count; i++) {
-                            lbuf.put(rep);
-                        }
-                    }
-                    rep = k;
-                    count = 1;
-                }
-            }
-        }
-
-        void flush() throws IOException {
-            if (count > 0) {
-                ros.flush();
-                for (int i = 0; i < count; i++) {
-                    lbuf.put(rep);
-                }
-                count = 0;
-            }
-            lbuf.flush();
-        }
-
-        void write() throws IOException {
-            lbuf.flush();
-            out.write(-(count - 1));
-            out.write(rep);
-            count = 0;
+    private void flushRow() throws IOException {
+        if (cnt > 0) {
+            int n = PackBits.encode(row, 0, cnt, packed, 0);
+            out.write(packed, 0, n);
+            cnt = 0;
         }
     }
 
-    static class LiteralBuffer {
-        byte[] buffer = new byte[129];
-        int count;
-
-        OutputStream out;
-
-        public LiteralBuffer(OutputStream out) {
-            this.out = out;
-        }
-
-        public void put(int k) throws IOException {
-            buffer[count++] = (byte) k;
-            if (count == 128) {
-                write();
-            }
-        }
-
-        void write() throws IOException {
-            out.write(count - 1);
-            out.write(buffer, 0, count);
-            count = 0;
-        }
+    public void flush() throws IOException {
+        flushRow();
+    }
 
-        void flush() throws IOException {
-            if (count > 0) {
-                write();
-            }
-        }
+    public void close() throws IOException {
+        flushRow();
     }
 
     static class PeekInputStream extends ByteArrayInputStream {
@@ -33,112 +33,295 @@
 package com.imagero.uio.io;
 
 import java.io.IOException;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 import com.imagero.uio.RandomAccessIO;
+import com.imagero.uio.RandomAccessInput;
 
 /**
- * InputStream over all strips
+ * InputStream over all strips.
+ * Strip positions are precomputed, so positioning is done with binary search.
+ * Adjacent strips are coalesced and read with single read call.
+ * Optionally upcoming strips may be loaded in background (see setPrefetch).
  * 
  * @author Andrei Kouznetsov
  */
 public class TIFFStripInputStream extends RandomAccessInputStream {
 
+	/**
+	 * max size of coalesced block
+	 */
+	public static final int MAX_BLOCK_SIZE = 1024 * 1024;
+
 	int[] stripOffsets, stripByteCount;
 
+	/**
+	 * position of strip i in this stream (last element is stream length)
+	 */
+	long[] stripStart;
+
 	int currentStrip = -1;
 	long stripLimit;
 	int markStrip;
 
+	/**
+	 * position in this stream
+	 */
+	long position;
+	long markPosition;
+
+	int prefetchDepth;
+	Executor executor;
+	ArrayDeque<Block> blocks = new ArrayDeque<Block>();
+
 	public TIFFStripInputStream(RandomAccessIO ra, int[] stripByteCount, int[] stripOffsets) {
-		super(ra);
-		this.stripByteCount = stripByteCount;
-		this.stripOffsets = stripOffsets;
+		this(ra, 0L, stripByteCount, stripOffsets);
 	}
 
 	public TIFFStripInputStream(RandomAccessIO ra, long startPos, int[] stripByteCount, int[] stripOffsets) {
 		super(ra, startPos);
 		this.stripByteCount = stripByteCount;
 		this.stripOffsets = stripOffsets;
+		this.stripStart = new long[stripOffsets.length + 1];
+		for (int i = 0; i < stripOffsets.length; i++) {
+			stripStart[i + 1] = stripStart[i] + (stripByteCount[i] & 0xFFFFFFFFL);
+		}
 	}
 
-	protected void checkPos() throws IOException {
-		if (pos > stripLimit || currentStrip == -1) {
-			// Sys.out.println("currentStrip:" + currentStrip);
-			if (currentStrip >= stripOffsets.length) {
-				throw new IOException();
+	/**
+	 * Load upcoming strips in background. Each block is read with its own child
+	 * stream (see RandomAccessInput.createInputChild), so underlying stream
+	 * should support concurrent reading of children (e.g. buffered stream
+	 * created with UIOStreamBuilder.setConcurrent(true) or unbuffered file
+	 * stream, whose children load data under lock of the file and keep its
+	 * file pointer). Closing of children never closes underlying stream.
+	 * 
+	 * @param depth
+	 *            how much blocks (up to MAX_BLOCK_SIZE) should be loaded ahead
+	 *            (0 - disable prefetch)
+	 * @param executor
+	 *            Executor used to load blocks
+	 */
+	public void setPrefetch(int depth, Executor executor) {
+		if (depth > 0 && executor == null) {
+			throw new NullPointerException("executor");
+		}
+		cancelPrefetch();
+		this.prefetchDepth = depth;
+		this.executor = executor;
+	}
+
+	/**
+	 * @return stream length (sum of all strip byte counts)
+	 */
+	public long length() {
+		return stripStart[stripStart.length - 1];
+	}
+
+	/**
+	 * find strip which contains given position (empty strips are skipped)
+	 */
+	int findStrip(long p) {
+		int lo = 0;
+		int hi = stripOffsets.length - 1;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (stripStart[mid] <= p) {
+				lo = mid;
+			} else {
+				hi = mid - 1;
 			}
-			currentStrip++;
-			stripLimit = stripOffsets[currentStrip] + stripByteCount[currentStrip];
-			pos = stripOffsets[currentStrip];
-
-			// File ft = new File(TiffReader.workDir + "tables" + currentStrip +
-			// ".jpg");
-			// FileOutputStream fout = new FileOutputStream(ft);
-			// in.seek(pos);
-			// byte [] b = new byte[256];
-			// for(int i = 0; i < stripByteCount[currentStrip];) {
-			// int r = in.read(b);
-			// if(r < 0) {
-			// break;
-			// }
-			// fout.write(b, 0, r);
-			// i =+ r;
-			// }
-			// fout.close();
+		}
+		return lo;
+	}
+
+	/**
+	 * Find physically contiguous block which starts at given position.
+	 * 
+	 * @return length of block
+	 */
+	int blockLength(int strip, long p, int max) {
+		long end = stripStart[strip + 1];
+		int n = strip + 1;
+		while (end - p < max && n < stripOffsets.length
+				&& (stripOffsets[n] & 0xFFFFFFFFL) == (stripOffsets[n - 1] & 0xFFFFFFFFL) + (stripByteCount[n - 1] & 0xFFFFFFFFL)) {
+			end = stripStart[++n];
+		}
+		return (int) Math.min(end - p, max);
+	}
+
+	/**
+	 * physical position for given stream position
+	 */
+	long physical(int strip, long p) {
+		return (stripOffsets[strip] & 0xFFFFFFFFL) + (p - stripStart[strip]);
+	}
+
+	private void updateStrip() {
+		if (position < length()) {
+			currentStrip = findStrip(position);
+			stripLimit = physical(currentStrip, stripStart[currentStrip + 1]);
+			pos = physical(currentStrip, position);
+		}
+	}
+
+	protected void checkPos() throws IOException {
+		if (currentStrip == -1 || position < stripStart[currentStrip] || position >= stripStart[currentStrip + 1]) {
+			updateStrip();
+		} else {
+			pos = physical(currentStrip, position);
 		}
 		super.checkPos();
 	}
 
-	synchronized public int read(byte[] b, int off, int len) throws IOException {
-		return super.read(b, off, Math.min(len, (int) (stripLimit - pos)));
+	public int read() throws IOException {
+		if (position >= length() || ro == null) {
+			return -1;
+		}
+		if (prefetchDepth > 0) {
+			Block block = getBlock();
+			int a = block.data()[(int) (position - block.start)] & 0xFF;
+			position++;
+			return a;
+		}
+		checkPos();
+		int a = ro.read();
+		if (a >= 0) {
+			position++;
+		}
+		return a;
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (position >= length() || ro == null) {
+			return -1;
+		}
+		int total = 0;
+		while (total < len && position < length()) {
+			int r;
+			if (prefetchDepth > 0) {
+				Block block = getBlock();
+				int bpos = (int) (position - block.start);
+				r = Math.min(len - total, block.length - bpos);
+				System.arraycopy(block.data(), bpos, b, off + total, r);
+			} else {
+				checkPos();
+				int max = blockLength(currentStrip, position, len - total);
+				r = ro.read(b, off + total, max);
+				if (r <= 0) {
+					break;
+				}
+			}
+			total += r;
+			position += r;
+		}
+		return total > 0 ? total : -1;
+	}
+
+	/**
+	 * get prefetched block which contains current position (and schedule
+	 * next blocks)
+	 */
+	private Block getBlock() throws IOException {
+		while (!blocks.isEmpty()) {
+			Block b = blocks.peekFirst();
+			if (position >= b.start && position < b.start + b.length) {
+				break;
+			}
+			blocks.removeFirst().cancel(false);
+		}
+		long next = blocks.isEmpty() ? position : blocks.peekLast().start + blocks.peekLast().length;
+		while (blocks.size() < prefetchDepth + 1 && next < length()) {
+			int strip = findStrip(next);
+			Block b = new Block(next, physical(strip, next), blockLength(strip, next, MAX_BLOCK_SIZE));
+			executor.execute(b);
+			blocks.addLast(b);
+			next += b.length;
+		}
+		return blocks.peekFirst();
+	}
+
+	private void cancelPrefetch() {
+		while (!blocks.isEmpty()) {
+			blocks.removeFirst().cancel(false);
+		}
+	}
+
+	public void close() throws IOException {
+		cancelPrefetch();
+		super.close();
 	}
 
 	public void mark(int i) {
-		super.mark(i);
+		markPosition = position;
 		markStrip = currentStrip;
 	}
 
 	public void reset() throws IOException {
-		super.reset();
+		position = markPosition;
 		currentStrip = markStrip;
 	}
 
 	public long skip(long l) throws IOException {
-		int lsi = stripOffsets.length - 1;
-		long limit = stripOffsets[lsi] + stripByteCount[lsi];
-		long remaining = l;
-		while (remaining > 0) {
-			checkPos();
-			long cs = Math.min(remaining, stripLimit - pos);
-			if (cs > limit - pos) {
-				cs = limit - pos;
-				remaining -= cs;
-				pos += cs;
-				break;
-			}
-			remaining -= cs;
-			pos += cs;
-		}
-		return l - remaining;
+		long skipped = Math.max(0, Math.min(l, length() - position));
+		position += skipped;
+		return skipped;
 	}
 
 	public int available() {
-		try {
-			return super.available();
-		} catch (IOException ex) {
-			Logger.getLogger(getClass().getName()).log(Level.WARNING, ex.getMessage(), ex);
-		}
-		return 0;
+		return (int) Math.min(Integer.MAX_VALUE, length() - position);
 	}
 
 	public long getPos() {
-		long res = 0;
-		for (int i = 0; i < currentStrip; i++) {
-			res += stripByteCount[i];
+		return position;
+	}
+
+	/**
+	 * block of adjacent strips loaded in background
+	 */
+	class Block extends FutureTask<byte[]> {
+		final long start;
+		final int length;
+
+		Block(long start, final long offset, final int length) {
+			super(new Callable<byte[]>() {
+				public byte[] call() throws Exception {
+					byte[] data = new byte[length];
+					RandomAccessInput child = ro.createInputChild(0, 0, ro.getByteOrder(), false);
+					try {
+						child.seek(offset);
+						child.readFully(data);
+					} finally {
+						child.close();
+					}
+					return data;
+				}
+			});
+			this.start = start;
+			this.length = length;
+		}
+
+		byte[] data() throws IOException {
+			try {
+				return super.get();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			} catch (ExecutionException ex) {
+				Throwable cause = ex.getCause();
+				if (cause instanceof IOException) {
+					throw (IOException) cause;
+				}
+				throw new IOException(cause);
+			}
 		}
-		res += stripByteCount[currentStrip] - (stripByteCount[currentStrip] + stripOffsets[currentStrip] - pos);
-		return res;
 	}
 }
@@ -0,0 +1,45 @@
+package com.imagero.uio.xform;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Helper for bulk conversions - typed ByteBuffer views over byte arrays
+ * let JVM use wide loads/stores instead of assembling values byte by byte.
+ */
+final class ByteArrayViews {
+
+    /**
+     * min element count for which views are used (for short runs plain loop is faster)
+     */
+    static final int MIN_COUNT = 8;
+
+    private ByteArrayViews() {
+    }
+
+    static ByteBuffer wrap(byte[] b, int offset, int length, ByteOrder order) {
+        return ByteBuffer.wrap(b, offset, length).slice().order(order);
+    }
+
+    /**
+     * find byte order described by positions array
+     * @param positions byte positions (see XTransformer)
+     * @param size element size in bytes
+     * @return ByteOrder or null if positions describe neither big nor little endian order
+     */
+    static ByteOrder order(int[] positions, int size) {
+        boolean be = true;
+        boolean le = true;
+        for (int i = 0; i < size; i++) {
+            be &= positions[i] == i;
+            le &= positions[i] == size - 1 - i;
+        }
+        if (be) {
+            return ByteOrder.BIG_ENDIAN;
+        }
+        if (le) {
+            return ByteOrder.LITTLE_ENDIAN;
+        }
+        return null;
+    }
+}
@@ -1,5 +1,7 @@
 package com.imagero.uio.xform;
 
+import java.nio.ByteOrder;
+
 /**
  * Big endian transform from bytes to other primitives.
  * Date: 10.01.2008
@@ -33,6 +35,10 @@ public class ByteToXBE {
     }
 
     public static final void byteToInt(byte[] source, int sourceOffset, int count, int[] dest, int destOffset) {
+        if (count >= ByteArrayViews.MIN_COUNT) {
+            ByteArrayViews.wrap(source, sourceOffset, count << 2, ByteOrder.BIG_ENDIAN).asIntBuffer().get(dest, destOffset, count);
+            return;
+        }
         for (int i = 0; i < count; i++) {
             int v = ((source[sourceOffset++] & 0xFF) << 24)
                     | ((source[sourceOffset++] & 0xFF) << 16)
@@ -54,6 +60,10 @@ public class ByteToXBE {
     }
 
     public static void byteToChar(byte[] source, int sourceOffset, int count, char[] dest, int destOffset) {
+        if (count >= ByteArrayViews.MIN_COUNT) {
+            ByteArrayViews.wrap(source, sourceOffset, count << 1, ByteOrder.BIG_ENDIAN).asCharBuffer().get(dest, destOffset, count);
+            return;
+        }
         for (int i = 0; i < count; i++) {
             int v = ((source[sourceOffset++] & 0xFF) << 8)
                     | (source[sourceOffset++] & 0xFF);
@@ -87,6 +97,10 @@ public class ByteToXBE {
     }
 
     public static void byteToDoubleBE(byte[] source, int sourceOffset, int count, double[] dest, int destOffset) {
+        if (count >= ByteArrayViews.MIN_COUNT) {
+            ByteArrayViews.wrap(source, sourceOffset, count << 3, ByteOrder.BIG_ENDIAN).asDoubleBuffer().get(dest, destOffset, count);
+            return;
+        }
         for (int i = 0; i < count; i++) {
             long v = ((long) (source[sourceOffset++] & 0xFF) << 56)
                     | ((long) (source[sourceOffset++] & 0xFF) << 48)
@@ -118,6 +132,10 @@ public class ByteToXBE {
     }
 
     public static void byteToFloatBE(byte[] source, int sourceOffset, int count, float[] dest, int destOffset) {
+        if (count >= ByteArrayViews.MIN_COUNT) {
+            ByteArrayViews.wrap(source, sourceOffset, count << 2, ByteOrder.BIG_ENDIAN).asFloatBuffer().get(dest, destOffset, count);
+            return;
+        }
         for (int i = 0; i < count; i++) {
             int v = ((source[sourceOffset++] & 0xFF) << 24)
                     | ((source[sourceOffset++] & 0xFF) << 16)
@@ -153,6 +171,10 @@ public class ByteToXBE {
     }
 
     public static void byteToLongBE(byte[] source, int sourceOffset, int count, long[] dest, int destOffset) {
+        if (count >= ByteArrayViews.MIN_COUNT) {
+            ByteArrayViews.wrap(source, sourceOffset, count << 3, ByteOrder.BIG_ENDIAN).asLongBuffer().get(dest, destOffset, count);
+            return;
+        }
         for (int i = 0; i < count; i++) {
             long v = ((long) (source[sourceOffset++] & 0xFF) << 56)
                     | ((long) (source[sourceOffset++] & 0xFF) << 48)
@@ -239,6 +261,10 @@ public class ByteToXBE {
     }
 
     public static void byteToShortBE(byte[] source, int sourceOffset, int count, short[] dest, int destOffset) {
+        if (count >= ByteArrayViews.MIN_COUNT) {
+            ByteArrayViews.wrap(source, sourceOffset, count << 1, ByteOrder.BIG_ENDIAN).asShortBuffer().get(dest, destOffset, count);
+            return;
+        }
         for (int i = 0; i < count; i++) {
             int v = ((source[sourceOffset++] & 0xFF) << 8)
                     | (source[sourceOffset++] & 0xFF);
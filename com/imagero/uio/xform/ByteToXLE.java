@@ -1,5 +1,7 @@
 package com.imagero.uio.xform;
 
+import java.nio.ByteOrder;
+
 /**
  * Date: 10.01.2008
  * 
@@ -31,6 +33,10 @@ public class ByteToXLE {
 	}
 
 	public static final void byteToInt(byte[] source, int sourceOffset, int count, int[] dest, int destOffset) {
+		if (count >= ByteArrayViews.MIN_COUNT) {
+			ByteArrayViews.wrap(source, sourceOffset, count << 2, ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(dest, destOffset, count);
+			return;
+		}
 		for (int i = 0; i < count; i++) {
 			int v = ((source[sourceOffset++] & 0xFF)) | (((source[sourceOffset++] & 0xFF)) << 8)
 					| (((source[sourceOffset++] & 0xFF)) << 16) | (((source[sourceOffset++] & 0xFF)) << 24);
@@ -49,6 +55,10 @@ public class ByteToXLE {
 	}
 
 	public static void byteToChar(byte[] source, int sourceOffset, int count, char[] dest, int destOffset) {
+		if (count >= ByteArrayViews.MIN_COUNT) {
+			ByteArrayViews.wrap(source, sourceOffset, count << 1, ByteOrder.LITTLE_ENDIAN).asCharBuffer().get(dest, destOffset, count);
+			return;
+		}
 		for (int i = 0; i < count; i++) {
 			int v = ((source[sourceOffset++] & 0xFF)) | (((source[sourceOffset++] & 0xFF)) << 8);
 			dest[destOffset + i] = (char) v;
@@ -73,6 +83,10 @@ public class ByteToXLE {
 	}
 
 	public static void byteToDoubleLE(byte[] source, int sourceOffset, int count, double[] dest, int destOffset) {
+		if (count >= ByteArrayViews.MIN_COUNT) {
+			ByteArrayViews.wrap(source, sourceOffset, count << 3, ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(dest, destOffset, count);
+			return;
+		}
 		for (int i = 0; i < count; i++) {
 			long v = (source[sourceOffset++] & 0xFF) | ((long) (source[sourceOffset++] & 0xFF) << 8)
 					| ((long) (source[sourceOffset++] & 0xFF) << 16) | ((long) (source[sourceOffset++] & 0xFF) << 24)
@@ -96,6 +110,10 @@ public class ByteToXLE {
 	}
 
 	public static void byteToFloatLE(byte[] source, int sourceOffset, int count, float[] dest, int destOffset) {
+		if (count >= ByteArrayViews.MIN_COUNT) {
+			ByteArrayViews.wrap(source, sourceOffset, count << 2, ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(dest, destOffset, count);
+			return;
+		}
 		for (int i = 0; i < count; i++) {
 			int v = ((source[sourceOffset++] & 0xFF)) | (((source[sourceOffset++] & 0xFF)) << 8)
 					| (((source[sourceOffset++] & 0xFF)) << 16) | (((source[sourceOffset++] & 0xFF)) << 24);
@@ -120,6 +138,10 @@ public class ByteToXLE {
 	}
 
 	public static void byteToLongLE(byte[] source, int sourceOffset, int count, long[] dest, int destOffset) {
+		if (count >= ByteArrayViews.MIN_COUNT) {
+			ByteArrayViews.wrap(source, sourceOffset, count << 3, ByteOrder.LITTLE_ENDIAN).asLongBuffer().get(dest, destOffset, count);
+			return;
+		}
 		for (int i = 0; i < count; i++) {
 			long v = (source[sourceOffset++] & 0xFF) | ((long) (source[sourceOffset++] & 0xFF) << 8)
 					| ((long) (source[sourceOffset++] & 0xFF) << 16) | ((long) (source[sourceOffset++] & 0xFF) << 24)
@@ -140,6 +162,10 @@ public class ByteToXLE {
 	}
 
 	public static void byteToShortLE(byte[] source, int sourceOffset, int count, short[] dest, int destOffset) {
+		if (count >= ByteArrayViews.MIN_COUNT) {
+			ByteArrayViews.wrap(source, sourceOffset, count << 1, ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(dest, destOffset, count);
+			return;
+		}
 		for (int i = 0; i < count; i++) {
 			int v = ((source[sourceOffset++] & 0xFF)) | (((source[sourceOffset++] & 0xFF)) << 8);
 			dest[destOffset + i] = (short) v;
@@ -31,6 +31,8 @@
  */
 package com.imagero.uio.xform;
 
+import java.nio.ByteOrder;
+
 
 /**
  * Primitive type conversion, array copying, etc.
@@ -121,6 +123,11 @@ public class XTransformer {
      * @param destOffset
      */
     public static final void intToByte(int[] source, int srcOffset, int count, byte[] dest, int destOffset, int[] positions) {
+        ByteOrder order = ByteArrayViews.order(positions, 4);
+        if (order != null && count >= ByteArrayViews.MIN_COUNT) {
+            ByteArrayViews.wrap(dest, destOffset, count << 2, order).asIntBuffer().put(source, srcOffset, count);
+            return;
+        }
         for (int i = 0; i < count; i++) {
             int p = 0;
             int v = source[srcOffset + i];
@@ -134,6 +141,11 @@ public class XTransformer {
 
 
     public static final void byteToInt(byte[] source, int sourceOffset, int count, int[] dest, int destOffset, int[] positions) {
+        ByteOrder order = ByteArrayViews.order(positions, 4);
+        if (order != null && count >= ByteArrayViews.MIN_COUNT) {
+            ByteArrayViews.wrap(source, sourceOffset, count << 2, order).asIntBuffer().get(dest, destOffset, count);
+            return;
+        }
         for (int i = 0; i < count; i++) {
             int p = 0;
             int v = ((source[sourceOffset + positions[p++]] & 0xFF) << 24)
@@ -162,11 +174,17 @@ public class XTransformer {
     }
 
     public static void byteToChar(byte[] source, int sourceOffset, int count, char[] dest, int destOffset, int[] positions) {
+        ByteOrder order = ByteArrayViews.order(positions, 2);
+        if (order != null && count >= ByteArrayViews.MIN_COUNT) {
+            ByteArrayViews.wrap(source, sourceOffset, count << 1, order).asCharBuffer().get(dest, destOffset, count);
+            return;
+        }
         for (int i = 0; i < count; i++) {
             int p = 0;
             int v = ((source[sourceOffset + positions[p++]] & 0xFF) << 8)
                     | (source[sourceOffset + positions[p++]] & 0xFF);
             dest[destOffset + i] = (char) v;
+            sourceOffset += 2;
         }
     }
 
@@ -188,6 +206,11 @@ public class XTransformer {
     }
 
     public static void charToByte(char[] source, int srcOffset, int count, byte[] dest, int destOffset, int[] positions) {
+        ByteOrder order = ByteArrayViews.order(positions, 2);
+        if (order != null && count >= ByteArrayViews.MIN_COUNT) {
+            ByteArrayViews.wrap(dest, destOffset, count << 1, order).asCharBuffer().put(source, srcOffset, count);
+            return;
+        }
         for (int i = 0; i < count; i++) {
             int p = 0;
             int v = source[srcOffset + i];
@@ -227,6 +250,11 @@ public class XTransformer {
     }
 
     public static void byteToDouble(byte[] source, int sourceOffset, int count, double[] dest, int destOffset, int[] positions) {
+        ByteOrder order = ByteArrayViews.order(positions, 8);
+        if (order != null && count >= ByteArrayViews.MIN_COUNT) {
+            ByteArrayViews.wrap(source, sourceOffset, count << 3, order).asDoubleBuffer().get(dest, destOffset, count);
+            return;
+        }
         for (int i = 0; i < count; i++) {
             int p = 0;
             long v = ((long) (source[sourceOffset + positions[p++]] & 0xFF) << 56)
@@ -238,6 +266,7 @@ public class XTransformer {
                     | ((long) (source[sourceOffset + positions[p++]] & 0xFF) << 8)
                     | (source[sourceOffset + positions[p++]] & 0xFF);
             dest[destOffset + i] = Double.longBitsToDouble(v);
+            sourceOffset += 8;
         }
     }
 
@@ -273,6 +302,11 @@ public class XTransformer {
     }
 
     public static void doubleToByte(double[] source, int srcOffset, int count, byte[] dest, int destOffset, int[] positions) {
+        ByteOrder order = ByteArrayViews.order(positions, 8);
+        if (order != null && count >= ByteArrayViews.MIN_COUNT) {
+            ByteArrayViews.wrap(dest, destOffset, count << 3, order).asDoubleBuffer().put(source, srcOffset, count);
+            return;
+        }
         for (int i = 0; i < count; i++) {
             int p = 0;
             double d = source[srcOffset + i];
@@ -311,6 +345,11 @@ public class XTransformer {
     }
 
     public static void byteToFloat(byte[] source, int sourceOffset, int count, float[] dest, int destOffset, int[] positions) {
+        ByteOrder order = ByteArrayViews.order(positions, 4);
+        if (order != null && count >= ByteArrayViews.MIN_COUNT) {
+            ByteArrayViews.wrap(source, sourceOffset, count << 2, order).asFloatBuffer().get(dest, destOffset, count);
+            return;
+        }
         for (int i = 0; i < count; i++) {
             int p = 0;
             int v = ((source[sourceOffset + positions[p++]] & 0xFF) << 24)
@@ -318,6 +357,7 @@ public class XTransformer {
                     | ((source[sourceOffset + positions[p++]] & 0xFF) << 8)
                     | (source[sourceOffset + positions[p++]] & 0xFF);
             dest[destOffset + i] = Float.intBitsToFloat(v);
+            sourceOffset += 4;
         }
     }
 
@@ -345,6 +385,11 @@ public class XTransformer {
     }
 
     public static void floatToByte(float[] source, int offset, int count, byte[] dest, int destOffset, int[] positions) {
+        ByteOrder order = ByteArrayViews.order(positions, 4);
+        if (order != null && count >= ByteArrayViews.MIN_COUNT) {
+            ByteArrayViews.wrap(dest, destOffset, count << 2, order).asFloatBuffer().put(source, offset, count);
+            return;
+        }
         for (int i = 0; i < count; i++) {
             int p = 0;
             float f = source[offset + i];
@@ -387,6 +432,11 @@ public class XTransformer {
     }
 
     public static void byteToLong(byte[] source, int sourceOffset, int count, long[] dest, int destOffset, int[] positions) {
+        ByteOrder order = ByteArrayViews.order(positions, 8);
+        if (order != null && count >= ByteArrayViews.MIN_COUNT) {
+            ByteArrayViews.wrap(source, sourceOffset, count << 3, order).asLongBuffer().get(dest, destOffset, count);
+            return;
+        }
         for (int i = 0; i < count; i++) {
             int p = 0;
             long v = ((long) (source[sourceOffset + positions[p++]] & 0xFF) << 56)
@@ -399,6 +449,7 @@ public class XTransformer {
                     | (source[sourceOffset + positions[p++]] & 0xFF);
 
             dest[destOffset + i] = v;
+            sourceOffset += 8;
         }
     }
 
@@ -434,6 +485,11 @@ public class XTransformer {
     }
 
     public static void longToByte(long[] source, int offset, int count, byte[] dest, int destOffset, int[] positions) {
+        ByteOrder order = ByteArrayViews.order(positions, 8);
+        if (order != null && count >= ByteArrayViews.MIN_COUNT) {
+            ByteArrayViews.wrap(dest, destOffset, count << 3, order).asLongBuffer().put(source, offset, count);
+            return;
+        }
         for (int i = 0; i < count; i++) {
             int p = 0;
             long v = source[offset + i];
@@ -465,11 +521,17 @@ public class XTransformer {
     }
 
     public static void byteToShort(byte[] source, int sourceOffset, int count, short[] dest, int destOffset, int[] positions) {
+        ByteOrder order = ByteArrayViews.order(positions, 2);
+        if (order != null && count >= ByteArrayViews.MIN_COUNT) {
+            ByteArrayViews.wrap(source, sourceOffset, count << 1, order).asShortBuffer().get(dest, destOffset, count);
+            return;
+        }
         for (int i = 0; i < count; i++) {
             int p = 0;
             int v = ((source[sourceOffset + positions[p++]] & 0xFF) << 8)
                     | (source[sourceOffset + positions[p++]] & 0xFF);
             dest[destOffset + i] = (short) v;
+            sourceOffset += 2;
         }
     }
 
@@ -491,6 +553,11 @@ public class XTransformer {
     }
 
     public static void shortToByte(short[] source, int offset, int count, byte[] dest, int destOffset, int[] positions) {
+        ByteOrder order = ByteArrayViews.order(positions, 2);
+        if (order != null && count >= ByteArrayViews.MIN_COUNT) {
+            ByteArrayViews.wrap(dest, destOffset, count << 1, order).asShortBuffer().put(source, offset, count);
+            return;
+        }
         for (int i = 0; i < count; i++) {
             int p = 0;
             int v = source[offset + i];
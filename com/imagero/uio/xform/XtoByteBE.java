@@ -1,5 +1,7 @@
 package com.imagero.uio.xform;
 
+import java.nio.ByteOrder;
+
 
 
 /**
@@ -48,6 +50,10 @@ public class XtoByteBE {
      * @param destOffset
      */
     public static final void intToByte(int[] source, int srcOffset, int count, byte[] dest, int destOffset) {
+        if (count >= ByteArrayViews.MIN_COUNT) {
+            ByteArrayViews.wrap(dest, destOffset, count << 2, ByteOrder.BIG_ENDIAN).asIntBuffer().put(source, srcOffset, count);
+            return;
+        }
         for (int i = 0; i < count; i++) {
             int v = source[srcOffset + i];
             dest[destOffset++] = (byte) ((v >>> 24) & 0xFF);
@@ -90,6 +96,10 @@ public class XtoByteBE {
     }
 
     public static void charToByte(char[] source, int srcOffset, int count, byte[] dest, int destOffset) {
+        if (count >= ByteArrayViews.MIN_COUNT) {
+            ByteArrayViews.wrap(dest, destOffset, count << 1, ByteOrder.BIG_ENDIAN).asCharBuffer().put(source, srcOffset, count);
+            return;
+        }
         for (int i = 0; i < count; i++) {
             int v = source[srcOffset + i];
             dest[destOffset++] = (byte) ((v >>> 8) & 0xFF);
@@ -125,6 +135,10 @@ public class XtoByteBE {
     }
 
     public static void doubleToByteBE(double[] source, int srcOffset, int count, byte[] dest, int destOffset) {
+        if (count >= ByteArrayViews.MIN_COUNT) {
+            ByteArrayViews.wrap(dest, destOffset, count << 3, ByteOrder.BIG_ENDIAN).asDoubleBuffer().put(source, srcOffset, count);
+            return;
+        }
         for (int i = 0; i < count; i++) {
             double d = source[srcOffset + i];
             long v = Double.doubleToLongBits(d);
@@ -159,6 +173,10 @@ public class XtoByteBE {
     }
 
     public static void floatToByteBE(float[] source, int offset, int count, byte[] dest, int destOffset) {
+        if (count >= ByteArrayViews.MIN_COUNT) {
+            ByteArrayViews.wrap(dest, destOffset, count << 2, ByteOrder.BIG_ENDIAN).asFloatBuffer().put(source, offset, count);
+            return;
+        }
         for (int i = 0; i < count; i++) {
             float f = source[offset + i];
             int v = Float.floatToIntBits(f);
@@ -203,6 +221,10 @@ public class XtoByteBE {
     }
 
     public static void longToByteBE(long[] source, int offset, int count, byte[] dest, int destOffset) {
+        if (count >= ByteArrayViews.MIN_COUNT) {
+            ByteArrayViews.wrap(dest, destOffset, count << 3, ByteOrder.BIG_ENDIAN).asLongBuffer().put(source, offset, count);
+            return;
+        }
         for (int i = 0; i < count; i++) {
             long v = source[offset + i];
             dest[destOffset++] = (byte) ((v >>> 56) & 0xFF);
@@ -230,6 +252,10 @@ public class XtoByteBE {
     }
 
     public static void shortToByteBE(short[] source, int offset, int count, byte[] dest, int destOffset) {
+        if (count >= ByteArrayViews.MIN_COUNT) {
+            ByteArrayViews.wrap(dest, destOffset, count << 1, ByteOrder.BIG_ENDIAN).asShortBuffer().put(source, offset, count);
+            return;
+        }
         for (int i = 0; i < count; i++) {
             int v = source[offset + i];
             dest[destOffset++] = (byte) ((v >>> 8) & 0xFF);
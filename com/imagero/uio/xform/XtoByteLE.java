@@ -1,5 +1,7 @@
 package com.imagero.uio.xform;
 
+import java.nio.ByteOrder;
+
 
 
 /**
@@ -45,6 +47,10 @@ public class XtoByteLE {
      * @param destOffset start offset in <code>dest</code> array
      */
     public static final void intToByte(int[] source, int srcOffset, int count, byte[] dest, int destOffset) {
+        if (count >= ByteArrayViews.MIN_COUNT) {
+            ByteArrayViews.wrap(dest, destOffset, count << 2, ByteOrder.LITTLE_ENDIAN).asIntBuffer().put(source, srcOffset, count);
+            return;
+        }
         for (int i = 0; i < count; i++) {
             int v = source[srcOffset + i];
             dest[destOffset++] = (byte) (v & 0xFF);
@@ -87,6 +93,10 @@ public class XtoByteLE {
     }
 
     public static final void charToByte(char[] source, int srcOffset, int count, byte[] dest, int destOffset) {
+        if (count >= ByteArrayViews.MIN_COUNT) {
+            ByteArrayViews.wrap(dest, destOffset, count << 1, ByteOrder.LITTLE_ENDIAN).asCharBuffer().put(source, srcOffset, count);
+            return;
+        }
         for (int i = 0; i < count; i++) {
             int v = source[srcOffset + i];
             dest[destOffset++] = (byte) (v & 0xFF);
@@ -122,6 +132,10 @@ public class XtoByteLE {
     }
 
     public static void doubleToByteLE(double[] source, int srcOffset, int count, byte[] dest, int destOffset) {
+        if (count >= ByteArrayViews.MIN_COUNT) {
+            ByteArrayViews.wrap(dest, destOffset, count << 3, ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().put(source, srcOffset, count);
+            return;
+        }
         for (int i = 0; i < count; i++) {
             double d = source[srcOffset + i];
             long v = Double.doubleToLongBits(d);
@@ -156,6 +170,10 @@ public class XtoByteLE {
     }
 
     public static void floatToByteLE(float[] source, int offset, int count, byte[] dest, int destOffset) {
+        if (count >= ByteArrayViews.MIN_COUNT) {
+            ByteArrayViews.wrap(dest, destOffset, count << 2, ByteOrder.LITTLE_ENDIAN).asFloatBuffer().put(source, offset, count);
+            return;
+        }
         for (int i = 0; i < count; i++) {
             float f = source[offset + i];
             int v = Float.floatToIntBits(f);
@@ -201,6 +219,10 @@ public class XtoByteLE {
 
 
     public static void longToByteLE(long[] source, int offset, int count, byte[] dest, int destOffset) {
+        if (count >= ByteArrayViews.MIN_COUNT) {
+            ByteArrayViews.wrap(dest, destOffset, count << 3, ByteOrder.LITTLE_ENDIAN).asLongBuffer().put(source, offset, count);
+            return;
+        }
         for (int i = 0; i < count; i++) {
             long v = source[offset + i];
             dest[destOffset++] = (byte) (v & 0xFF);
@@ -228,6 +250,10 @@ public class XtoByteLE {
     }
 
     public static void shortToByteLE(short[] source, int offset, int count, byte[] dest, int destOffset) {
+        if (count >= ByteArrayViews.MIN_COUNT) {
+            ByteArrayViews.wrap(dest, destOffset, count << 1, ByteOrder.LITTLE_ENDIAN).asShortBuffer().put(source, offset, count);
+            return;
+        }
         for (int i = 0; i < count; i++) {
             int v = source[offset + i];
             dest[destOffset++] = (byte) (v & 0xFF);